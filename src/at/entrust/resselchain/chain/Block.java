@@ -7,15 +7,31 @@
 
 package at.entrust.resselchain.chain;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.BinaryEncoder;
 import at.entrust.resselchain.utils.Hash;
+import at.entrust.resselchain.utils.MerkleTree;
 
 public class Block implements Serializable {
 	private static final long serialVersionUID = 4873236738290079944L;
+
+	// version 1: hash of a text header, fixed when the block is created (Tx added later are not covered)
+	// version 2: hash of a binary header including the Merkle root of all Tx hashes
+	// version 3: hash of the canonical binary encoding (see BinaryEncoder), only Tx of version 2,
+	//            required from BINARY_ENCODING_ACTIVATION_HEIGHT on
+	public static final int LEGACY_VERSION = 1;
+	public static final int MERKLE_VERSION = 2;
+	public static final int BINARY_VERSION = 3;
+	public static final int LATEST_VERSION = BINARY_VERSION;
+
 	private long timestamp;
 	private long blockNumber;
 	private long nonce;
@@ -26,7 +42,10 @@ public class Block implements Serializable {
 	private ArrayList<Transaction> transactions = new ArrayList<>();
 	private String tag;
 	private String hashWithoutNonce = null;
-	private byte[] hash;
+	private transient volatile byte[] hash; // cached block hash, reset when the nonce changes
+	private int version = LEGACY_VERSION; // 0 in blocks stored before versions existed
+	private transient MerkleTree merkleTree = null; // built on first use, then appended to
+	private transient byte[] headerWithoutNonce = null; // binary header of version 2 blocks
 
 	public Block(long timestamp, long blockNumber, long nonce, String miner, int difficulty, byte[] previousBlockhash, byte[] signature, String tag) {
 		super();
@@ -80,6 +99,7 @@ public class Block implements Serializable {
 
 	public void setNonce(long nonce){
 		this.nonce = nonce;
+		this.hash = null;
 	}
 	
 	public ArrayList<Transaction> getTransactions() {
@@ -92,6 +112,42 @@ public class Block implements Serializable {
 	
 	public void addTransaction(Transaction value) {
 		transactions.add(value);
+		if (getVersion() >= MERKLE_VERSION) {
+			// only the path of the new Tx is hashed, the header and hash are rebuilt on demand
+			if (merkleTree != null)
+				merkleTree.append(value.getTransactionHash());
+			headerWithoutNonce = null;
+			hash = null;
+		}
+	}
+
+	public int getVersion() {
+		return (version == 0) ? LEGACY_VERSION : version;
+	}
+
+	// set the version before adding Tx, version 1 blocks do not cover Tx added earlier
+	public void setVersion(int version) {
+		if (version == getVersion())
+			return;
+		this.version = version;
+		hashWithoutNonce = null;
+		headerWithoutNonce = null;
+		merkleTree = null;
+		hash = null;
+	}
+
+	public synchronized MerkleTree getMerkleTree() {
+		if (merkleTree == null) {
+			MerkleTree tree = new MerkleTree();
+			for (Transaction t : transactions)
+				tree.append(t.getTransactionHash());
+			merkleTree = tree;
+		}
+		return merkleTree;
+	}
+
+	public byte[] getMerkleRoot() {
+		return getMerkleTree().getRoot();
 	}
 
 
@@ -120,6 +176,9 @@ public class Block implements Serializable {
 		if (!(obj instanceof Block))
 			return false;
 		Block other = (Block) obj;
+		// the hash covers all header fields, compare it before the transactions
+		if (!Arrays.equals(getBlockHash(), other.getBlockHash()))
+			return false;
 		if (blockNumber != other.blockNumber)
 			return false;
 		if (difficulty != other.difficulty)
@@ -150,7 +209,16 @@ public class Block implements Serializable {
 		return true;
 	}
 
+	// the returned array is shared, do not modify it
 	public byte[] getBlockHash() {
+		if (hash != null)
+			return hash;
+		if (getVersion() >= MERKLE_VERSION) {
+			if (headerWithoutNonce == null)
+				headerWithoutNonce = (getVersion() == MERKLE_VERSION) ? serializeHeaderWithoutNonce() : encodeHeaderWithoutNonce();
+			hash = BinaryEncoder.get().putRaw(headerWithoutNonce).putLong(nonce).hash();
+			return hash;
+		}
 		if (hashWithoutNonce == null) {
 			// append all data fields and transaction data fields
 			StringBuilder sb = new StringBuilder();
@@ -167,7 +235,59 @@ public class Block implements Serializable {
 			}
 			hashWithoutNonce = Arrays.toString(Hash.hash(sb.toString()));
 		}
-		return Hash.hash(hashWithoutNonce + nonce);
+		hash = Hash.hash(hashWithoutNonce + nonce);
+		return hash;
+	}
+
+	private byte[] encodeHeaderWithoutNonce() {
+		byte[] merkleRoot = getMerkleRoot(); // Tx hashes not computed yet use the encoder, too
+		BinaryEncoder encoder = BinaryEncoder.get();
+		encoder.putInt(getVersion());
+		encoder.putLong(timestamp);
+		encoder.putLong(blockNumber);
+		encoder.putString(miner);
+		encoder.putInt(difficulty);
+		encoder.putBytes(previousBlockHash);
+		encoder.putString(tag);
+		encoder.putBytes(merkleRoot);
+		return encoder.toByteArray();
+	}
+
+	// block and Tx versions have to match the encoding required at the height of the block
+	public boolean hasValidEncoding() {
+		boolean binary = blockNumber >= GlobalConfig.INSTANCE.BINARY_ENCODING_ACTIVATION_HEIGHT;
+		if (binary != (getVersion() >= BINARY_VERSION))
+			return false;
+		for (Transaction t : transactions) {
+			if (!isTxVersionAllowed(t, blockNumber))
+				return false;
+		}
+		return true;
+	}
+
+	public static boolean isTxVersionAllowed(Transaction tx, long blockNumber) {
+		if (blockNumber >= GlobalConfig.INSTANCE.BINARY_ENCODING_ACTIVATION_HEIGHT)
+			return tx.getVersion() >= Transaction.BINARY_VERSION;
+		return tx.getVersion() == Transaction.LEGACY_VERSION;
+	}
+
+	private byte[] serializeHeaderWithoutNonce() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(getVersion());
+			out.writeLong(timestamp);
+			out.writeLong(blockNumber);
+			out.writeUTF(miner);
+			out.writeInt(difficulty);
+			out.writeInt(previousBlockHash == null ? -1 : previousBlockHash.length);
+			if (previousBlockHash != null)
+				out.write(previousBlockHash);
+			out.writeUTF(tag);
+			out.write(getMerkleRoot());
+		} catch (IOException e) {
+			e.printStackTrace(); // cannot happen when writing to memory
+		}
+		return bytes.toByteArray();
 	}
 
 	public long getTimestamp() {
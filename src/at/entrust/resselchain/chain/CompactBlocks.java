@@ -0,0 +1,160 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.state.ChainState;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.BinaryEncoder;
+import at.entrust.resselchain.utils.LruCache;
+
+/* Compact block relay: a CompactBlock message has the block header and a short id for every Tx.
+ * The receiver rebuilds the block from its unconfirmed Tx and requests the Tx it does not have with GetBlockTx,
+ * the sender answers with a BlockTx message. Short ids are salted with the block hash, so two Tx with the same
+ * short id in one block do not have the same short id in other blocks. If the rebuilt block does not have the
+ * announced hash, all Tx are requested. The hash of blocks before MERKLE_VERSION does not cover their Tx,
+ * so such blocks are always sent in full. */
+public enum CompactBlocks {
+	INSTANCE;
+
+	public static final String COMPACT_BLOCK = "CompactBlock";
+	public static final String GET_BLOCK_TX = "GetBlockTx";
+	public static final String BLOCK_TX = "BlockTx";
+
+	private static final int SHORT_ID_LENGTH = 6; // 8 characters in Base64
+	private static final int CACHED_BLOCKS = 64;
+
+	// blocks sent as compact block, for GetBlockTx requests
+	private final LruCache<String, Block> sentBlocks = new LruCache<>(CACHED_BLOCKS);
+	// blocks waiting for BlockTx
+	private final LruCache<String, PendingBlock> pendingBlocks = new LruCache<>(CACHED_BLOCKS);
+
+	public static class PendingBlock {
+		private final Block header;
+		private final byte[] hash;
+		private final Transaction[] transactions;
+		private final int gossipTtl;
+		private final String sendingNode;
+		private boolean isFullRequest = false;
+
+		PendingBlock(Block header, byte[] hash, int txCount, int gossipTtl, String sendingNode) {
+			this.header = header;
+			this.hash = hash;
+			this.transactions = new Transaction[txCount];
+			this.gossipTtl = gossipTtl;
+			this.sendingNode = sendingNode;
+		}
+
+		public ArrayList<Integer> getMissingIndexes() {
+			ArrayList<Integer> missing = new ArrayList<>();
+			for (int i = 0; i < transactions.length; i++) {
+				if (transactions[i] == null)
+					missing.add(i);
+			}
+			return missing;
+		}
+
+		public void setTransaction(int index, Transaction tx) {
+			if (index >= 0 && index < transactions.length)
+				transactions[index] = tx;
+		}
+
+		// drops all Tx, e.g. if a Tx from the local pool had the short id of another Tx
+		public void requestAll() {
+			Arrays.fill(transactions, null);
+			isFullRequest = true;
+		}
+
+		public boolean isFullRequest() {
+			return isFullRequest;
+		}
+
+		// the header is copied, a block cannot be rebuilt once Tx are added
+		public Block buildBlock() {
+			Block block = new Block(header.getTimestamp(), header.getBlockNumber(), header.getNonce(), header.getMiner(), header.getDifficulty(), header.getPreviousBlockHash(), header.getSignature(), header.getTag());
+			block.setVersion(header.getVersion());
+			for (Transaction tx : transactions)
+				block.addTransaction(tx);
+			return block;
+		}
+
+		public byte[] getHash() {
+			return hash;
+		}
+
+		public long getBlockNumber() {
+			return header.getBlockNumber();
+		}
+
+		public int getGossipTTL() {
+			return gossipTtl;
+		}
+
+		public String getSendingNode() {
+			return sendingNode;
+		}
+	}
+
+	public boolean isEnabled() {
+		return GlobalConfig.INSTANCE.COMPACT_BLOCKS;
+	}
+
+	// only the hash of Merkle blocks shows whether the rebuilt Tx are the ones of the block
+	public static boolean isSupported(Block block) {
+		return block.getVersion() >= Block.MERKLE_VERSION;
+	}
+
+	public static byte[] getShortId(byte[] blockHash, Transaction tx) {
+		byte[] txHash = tx.getTransactionHash(); // before get(), the Tx hash may use the encoder itself
+		return Arrays.copyOf(BinaryEncoder.get().putRaw(blockHash).putRaw(txHash).hash(), SHORT_ID_LENGTH);
+	}
+
+	public void rememberSentBlock(Block block) {
+		synchronized (sentBlocks) {
+			sentBlocks.put(Base64Converter.encodeFromByteArray(block.getBlockHash()), block);
+		}
+	}
+
+	public Block getSentBlock(byte[] hash) {
+		synchronized (sentBlocks) {
+			return sentBlocks.get(Base64Converter.encodeFromByteArray(hash));
+		}
+	}
+
+	// fills the Tx of a compact block from the unconfirmed Tx
+	public PendingBlock reconstruct(Block header, byte[] hash, ArrayList<String> shortIds, int gossipTtl, String sendingNode) {
+		PendingBlock pending = new PendingBlock(header, hash, shortIds.size(), gossipTtl, sendingNode);
+		if (shortIds.isEmpty())
+			return pending;
+
+		HashMap<String, Transaction> pool = new HashMap<>();
+		for (Transaction tx : ChainState.INSTANCE.getAllUnconfirmedTransactions())
+			pool.put(Base64Converter.encodeFromByteArray(getShortId(hash, tx)), tx);
+
+		for (int i = 0; i < shortIds.size(); i++)
+			pending.setTransaction(i, pool.get(shortIds.get(i)));
+		return pending;
+	}
+
+	public void addPending(PendingBlock pending) {
+		synchronized (pendingBlocks) {
+			pendingBlocks.put(Base64Converter.encodeFromByteArray(pending.getHash()), pending);
+		}
+	}
+
+	// returns and removes the pending block, null if it is unknown
+	public PendingBlock removePending(byte[] hash) {
+		synchronized (pendingBlocks) {
+			return pendingBlocks.remove(Base64Converter.encodeFromByteArray(hash));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.chain;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.entrust.resselchain.communication.Gossip;
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.state.ChainState;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.Hash;
+import at.entrust.resselchain.utils.LruCache;
+
+/* Drops blocks and Tx received before, without parsing the XML or verifying signatures.
+ * A message is identified by the hash of its text without SendingNode and GossipTTL, as these differ between
+ * the peers relaying it. Blocks are also dropped if their Hash element names a block that has been processed,
+ * e.g. the compact and the full form of a block. Requests, status messages and external Tx, which are
+ * answered, are never dropped. */
+public enum DuplicateFilter {
+	INSTANCE;
+
+	private static final HashSet<String> FILTERED_TYPES = new HashSet<>(Arrays.asList("Block", CompactBlocks.COMPACT_BLOCK, "Tx", "UtilityTx"));
+	private static final String[] ROUTING_ELEMENTS = { "SendingNode", "GossipTTL" };
+	private static final int MAX_PEERS = 1000;
+
+	private final LruCache<String, Boolean> seenMessages = new LruCache<>(GlobalConfig.INSTANCE.SEEN_MESSAGE_CACHE_SIZE);
+	private final LruCache<String, PeerStats> peerStats = new LruCache<>(MAX_PEERS);
+
+	public static class PeerStats {
+		private final AtomicLong received = new AtomicLong();
+		private final AtomicLong duplicates = new AtomicLong();
+
+		public long getReceived() {
+			return received.get();
+		}
+
+		public long getDuplicates() {
+			return duplicates.get();
+		}
+	}
+
+	// peer is the address of the connection
+	public boolean isDuplicate(String message, String peer) {
+		String type = getRootName(message);
+		if (type == null || !FILTERED_TYPES.contains(type))
+			return false;
+
+		PeerStats stats;
+		synchronized (peerStats) {
+			stats = peerStats.computeIfAbsent(getPeerKey(message, peer), k -> new PeerStats());
+		}
+		stats.received.incrementAndGet();
+
+		if (!isKnown(type, message))
+			return false;
+		stats.duplicates.incrementAndGet();
+		return true;
+	}
+
+	private boolean isKnown(String type, String message) {
+		if (type.equals("Block") || type.equals(CompactBlocks.COMPACT_BLOCK)) {
+			String hash = getElementText(message, "Hash");
+			try {
+				if (hash != null && Gossip.INSTANCE.isSeen(Base64Converter.decodeToByteArray(hash)))
+					return true;
+			} catch (IllegalArgumentException e) {
+				// no valid Base64, the message is rejected when it is parsed
+			}
+		}
+
+		// identical messages have the same result, so they can be marked before processing
+		String id = Base64Converter.encodeFromByteArray(Hash.hash(removeRoutingElements(message)));
+		synchronized (seenMessages) {
+			return seenMessages.put(id, Boolean.TRUE) != null;
+		}
+	}
+
+	// sorted by peer
+	public Map<String, PeerStats> getPeerStats() {
+		synchronized (peerStats) {
+			return new TreeMap<>(peerStats);
+		}
+	}
+
+	// address of the connection, followed by the SendingNode if it names a known participant (nodes on the same host)
+	// other names are not trusted, so a client cannot create new entries by changing the name
+	public static String getPeerKey(String message, String peer) {
+		String key = (peer != null) ? peer : "local";
+		String sendingNode = getElementText(message, "SendingNode");
+		if (sendingNode != null && ChainState.INSTANCE.getParticipantByName(sendingNode) != null)
+			key += "/" + sendingNode;
+		return key;
+	}
+
+	// name of the root element, null if there is none
+	public static String getRootName(String message) {
+		int start = 0;
+		while ((start = message.indexOf('<', start)) != -1) {
+			// skip the XML declaration, comments and doctype
+			if (start + 1 < message.length() && message.charAt(start + 1) != '?' && message.charAt(start + 1) != '!')
+				break;
+			start++;
+		}
+		if (start == -1)
+			return null;
+
+		int end = start + 1;
+		while (end < message.length() && !Character.isWhitespace(message.charAt(end)) && message.charAt(end) != '>' && message.charAt(end) != '/')
+			end++;
+		return (end > start + 1) ? message.substring(start + 1, end) : null;
+	}
+
+	// text of the first element with this name, only for elements without attributes and child elements
+	public static String getElementText(String message, String name) {
+		String startTag = "<" + name + ">";
+		int start = message.indexOf(startTag);
+		if (start == -1)
+			return null;
+		start += startTag.length();
+		int end = message.indexOf("</" + name + ">", start);
+		return (end == -1) ? null : message.substring(start, end);
+	}
+
+	private static String removeRoutingElements(String message) {
+		StringBuilder sb = new StringBuilder(message);
+		for (String name : ROUTING_ELEMENTS) {
+			String startTag = "<" + name + ">";
+			String endTag = "</" + name + ">";
+			int start;
+			while ((start = sb.indexOf(startTag)) != -1) {
+				int end = sb.indexOf(endTag, start);
+				if (end == -1)
+					break;
+				sb.delete(start, end + endTag.length());
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -11,29 +11,36 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.security.InvalidKeyException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
 
+import at.entrust.resselchain.communication.Gossip;
 import at.entrust.resselchain.communication.IncomingMessageHandler;
+import at.entrust.resselchain.communication.Inventory;
 import at.entrust.resselchain.communication.NewClient;
+import at.entrust.resselchain.communication.RateLimiter;
 import at.entrust.resselchain.communication.Server;
+import at.entrust.resselchain.communication.WorkerThread;
 import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.mining.Miner;
 import at.entrust.resselchain.state.ChainState;
 import at.entrust.resselchain.statetable.AssetStateTable;
+import at.entrust.resselchain.tree.InvalidBlockOrderException;
 import at.entrust.resselchain.tree.TreeNode;
 import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.MerkleTree;
 import at.entrust.resselchain.utils.Sign;
 import at.entrust.resselchain.utils.TimeSlots;
+import at.entrust.resselchain.utils.VerifiedSignatureCache;
+import nu.xom.Attribute;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
+import nu.xom.Elements;
 import nu.xom.ParsingException;
 import nu.xom.Serializer;
 
@@ -105,6 +112,52 @@ public class IncomingMessage implements IncomingMessageHandler {
 		numMessagesInQueue.appendChild(String.valueOf(NewClient.INSTANCE.getTotalQueueMessages()));
 		replyRoot.appendChild(numMessagesInQueue);
 
+		// per peer: depth,sent,dropped,average and max send latency in us
+		StringBuilder strPeerQueues = new StringBuilder();
+		for (Map.Entry<String, WorkerThread.QueueStats> entry : NewClient.INSTANCE.getQueueMessages().entrySet()) {
+			WorkerThread.QueueStats stats = entry.getValue();
+			strPeerQueues.append(entry.getKey());
+			strPeerQueues.append(":");
+			strPeerQueues.append(stats.getDepth()).append(",");
+			strPeerQueues.append(stats.getSent()).append(",");
+			strPeerQueues.append(stats.getDropped()).append(",");
+			strPeerQueues.append(stats.getAverageLatencyMicroseconds()).append(",");
+			strPeerQueues.append(stats.getMaxLatencyMicroseconds());
+			strPeerQueues.append(";");
+		}
+		Element peerQueues = new Element("PeerQueues");
+		peerQueues.appendChild(strPeerQueues.toString());
+		replyRoot.appendChild(peerQueues);
+
+		// per peer: block and Tx messages received,duplicates dropped
+		StringBuilder strDuplicates = new StringBuilder();
+		for (Map.Entry<String, DuplicateFilter.PeerStats> entry : DuplicateFilter.INSTANCE.getPeerStats().entrySet()) {
+			strDuplicates.append(entry.getKey());
+			strDuplicates.append(":");
+			strDuplicates.append(entry.getValue().getReceived()).append(",");
+			strDuplicates.append(entry.getValue().getDuplicates());
+			strDuplicates.append(";");
+		}
+		Element duplicateMessages = new Element("DuplicateMessages");
+		duplicateMessages.appendChild(strDuplicates.toString());
+		replyRoot.appendChild(duplicateMessages);
+
+		Element rejectedMessages = new Element("RejectedMessages");
+		rejectedMessages.appendChild(String.valueOf(RateLimiter.INSTANCE.getRejectedCount()));
+		replyRoot.appendChild(rejectedMessages);
+
+		Element busyResponses = new Element("BusyResponses");
+		busyResponses.appendChild(String.valueOf(RateLimiter.INSTANCE.getBusyCount()));
+		replyRoot.appendChild(busyResponses);
+
+		Element lastBlockVerifyMicroseconds = new Element("LastBlockVerifyMicroseconds");
+		lastBlockVerifyMicroseconds.appendChild(String.valueOf(SignatureVerifier.INSTANCE.getLastBlockVerifyMicroseconds()));
+		replyRoot.appendChild(lastBlockVerifyMicroseconds);
+
+		Element signatureCacheHitRate = new Element("SignatureCacheHitRate");
+		signatureCacheHitRate.appendChild(String.valueOf(VerifiedSignatureCache.INSTANCE.getHitRate()));
+		replyRoot.appendChild(signatureCacheHitRate);
+
 		ArrayList<String> tStates = Server.getThreadStates();
 		int numTStatesBlocked = 0;
 		int numTStatesWaiting = 0;
@@ -222,24 +275,22 @@ public class IncomingMessage implements IncomingMessageHandler {
 		sendResponse(out.toString(), output);
 	}
 
-	private void processBlock(String message){
+	private void processBlock(Element root, String message){
 		try {
 			Block block = new IncomingMessageSerializer().deserializeBlockFromString(message);
 		    if (block == null) return;
 
-            Logger.STD.logImportant("Block received: Block# " + block.getBlockNumber() +  ", Miner " + block.getMiner());
-
-            // Process block if it is greater than current block
-            if (ChainState.INSTANCE.getLastBlock().getBlockNumber() < block.getBlockNumber()) {
-				if (!ChainState.INSTANCE.appendBlock(block)) {
-					Miner.stopMining();
-					ChainState.INSTANCE.startSync(block);
-				}
-    			Miner.startMining();
-            } else{
-				Logger.STD.logImportant(String.format("Block[%d] discarded because not longer than current chain[%d]",  block.getBlockNumber(), ChainState.INSTANCE.getLastBlock().getBlockNumber()));
+			// gossip delivers a block on several paths, only the first one is processed
+			// known blocks are not requested again after an Inv
+			int gossipTtl = Gossip.getTTL(root);
+			boolean isNew = Gossip.INSTANCE.markSeen(block.getBlockHash());
+			if (gossipTtl > 0 && !isNew) {
+				Logger.FULL.log("Duplicate block discarded: Block# " + block.getBlockNumber());
+				return;
 			}
 
+			appendReceivedBlock(block, gossipTtl, root.getChildElements("SendingNode").get(0).getValue());
+
 		} catch (ParsingException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -247,7 +298,135 @@ public class IncomingMessage implements IncomingMessageHandler {
 		}
 	}
 
-	private void processTransaction(String message, boolean external, PrintWriter output){
+	// appends a verified block received from sendingNode, syncs if it does not fit and relays it otherwise
+	private void appendReceivedBlock(Block block, int gossipTtl, String sendingNode) {
+        Logger.STD.logImportant("Block received: Block# " + block.getBlockNumber() +  ", Miner " + block.getMiner());
+
+        // Process block if it is greater than current block
+        if (ChainState.INSTANCE.getLastBlock().getBlockNumber() < block.getBlockNumber()) {
+			if (!ChainState.INSTANCE.appendBlock(block)) {
+				Miner.stopMining();
+				ChainState.INSTANCE.startSync(block);
+			} else if (gossipTtl > 1) {
+				// relay valid blocks only
+				Gossip.INSTANCE.broadcastBlock(block, gossipTtl - 1, sendingNode, block.getMiner());
+			}
+			Miner.startMining();
+        } else{
+			Logger.STD.logImportant(String.format("Block[%d] discarded because not longer than current chain[%d]",  block.getBlockNumber(), ChainState.INSTANCE.getLastBlock().getBlockNumber()));
+		}
+	}
+
+	private void processCompactBlock(Element root) {
+		Block header = new IncomingMessageSerializer().deserializeBlockHeaderFromElement(root);
+		if (header == null) return;
+		if (!CompactBlocks.isSupported(header)) {
+			// a rebuilt block could not be checked against its hash
+			Logger.STD.log("Compact block# " + header.getBlockNumber() + " with version " + header.getVersion() + " not supported. Block will be discarded.");
+			return;
+		}
+
+		byte[] hash = Base64Converter.decodeToByteArray(root.getChildElements("Hash").get(0).getValue());
+		int gossipTtl = Gossip.getTTL(root);
+		// the hash is marked once the rebuilt block matches it and has been verified
+		if (Gossip.INSTANCE.isSeen(hash) && gossipTtl > 0) {
+			Logger.FULL.log("Duplicate compact block discarded: Block# " + header.getBlockNumber());
+			return;
+		}
+		if (ChainState.INSTANCE.getLastBlock().getBlockNumber() >= header.getBlockNumber()) {
+			Logger.STD.logImportant(String.format("Block[%d] discarded because not longer than current chain[%d]",  header.getBlockNumber(), ChainState.INSTANCE.getLastBlock().getBlockNumber()));
+			return;
+		}
+
+		ArrayList<String> shortIds = new ArrayList<>();
+		String ids = root.getChildElements("ShortIds").get(0).getValue().trim();
+		if (!ids.isEmpty())
+			shortIds.addAll(Arrays.asList(ids.split(" ")));
+
+		String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
+		CompactBlocks.PendingBlock pending = CompactBlocks.INSTANCE.reconstruct(header, hash, shortIds, gossipTtl, sendingNode);
+		Logger.FULL.log("Compact block# " + header.getBlockNumber() + ": " + (shortIds.size() - pending.getMissingIndexes().size()) + " of " + shortIds.size() + " Tx found in pool");
+		completeCompactBlock(pending, true);
+	}
+
+	// appends the block if all Tx are there, requests missing Tx otherwise
+	private void completeCompactBlock(CompactBlocks.PendingBlock pending, boolean mayRequest) {
+		ArrayList<Integer> missing = pending.getMissingIndexes();
+		if (missing.isEmpty()) {
+			Block block = pending.buildBlock();
+			if (!Arrays.equals(block.getBlockHash(), pending.getHash())) {
+				if (pending.isFullRequest()) {
+					Logger.STD.log("Block# " + pending.getBlockNumber() + " does not match its hash. Block will be discarded.");
+					return;
+				}
+				// a Tx from the pool has the short id of a Tx of the block
+				Logger.FULL.log("Compact block# " + pending.getBlockNumber() + " does not match its hash, requesting all Tx");
+				pending.requestAll();
+				missing = pending.getMissingIndexes();
+				mayRequest = true;
+			} else {
+				if (!new IncomingMessageSerializer().verifyBlock(block))
+					return;
+				if (!Gossip.INSTANCE.markSeen(block.getBlockHash()) && pending.getGossipTTL() > 0) {
+					Logger.FULL.log("Duplicate compact block discarded: Block# " + block.getBlockNumber());
+					return; // completed on another gossip path in the meantime
+				}
+				appendReceivedBlock(block, pending.getGossipTTL(), pending.getSendingNode());
+				return;
+			}
+		}
+
+		Participant p = ChainState.INSTANCE.getParticipantByName(pending.getSendingNode());
+		if (!mayRequest || p == null) {
+			Logger.STD.log("Tx of compact block# " + pending.getBlockNumber() + " missing. Block will be discarded.");
+			return;
+		}
+		CompactBlocks.INSTANCE.addPending(pending);
+		NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), new OutgoingMessageSerializer().serializeGetBlockTxToString(pending.getHash(), missing));
+	}
+
+	private void processGetBlockTx(Element root) {
+		String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
+		Participant p = ChainState.INSTANCE.getParticipantByName(sendingNode);
+		if (p == null) {
+			Logger.STD.log("GetBlockTx from unknown participant " + sendingNode + " discarded");
+			return;
+		}
+
+		Block block = CompactBlocks.INSTANCE.getSentBlock(Base64Converter.decodeToByteArray(root.getChildElements("Hash").get(0).getValue()));
+		if (block == null) {
+			Logger.FULL.log("GetBlockTx from " + sendingNode + " for unknown block");
+			return;
+		}
+
+		ArrayList<Integer> indexes = new ArrayList<>();
+		String indexList = root.getChildElements("Indexes").get(0).getValue().trim();
+		if (!indexList.isEmpty()) {
+			for (String index : indexList.split(" "))
+				indexes.add(Integer.valueOf(index));
+		}
+		NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), new OutgoingMessageSerializer().serializeBlockTxToString(block, indexes));
+	}
+
+	private void processBlockTx(Element root) {
+		CompactBlocks.PendingBlock pending = CompactBlocks.INSTANCE.removePending(Base64Converter.decodeToByteArray(root.getChildElements("Hash").get(0).getValue()));
+		if (pending == null)
+			return; // already complete or evicted
+
+		IncomingMessageSerializer serializer = new IncomingMessageSerializer();
+		Elements transactions = root.getChildElements("Transactions").get(0).getChildElements();
+		for (int i = 0; i < transactions.size(); i++) {
+			Element tx = transactions.get(i);
+			pending.setTransaction(Integer.valueOf(tx.getAttribute("order").getValue()), serializer.deserializeBlockTxFromElement(tx));
+		}
+		// the chain may have grown in the meantime
+		if (ChainState.INSTANCE.getLastBlock().getBlockNumber() >= pending.getBlockNumber())
+			return;
+		// Tx still missing are not requested again, the block is synced later then
+		completeCompactBlock(pending, false);
+	}
+
+	private void processTransaction(Element root, String message, boolean external, PrintWriter output){
 		// we allow to receive a single external Tx or a list of external Tx
 		String stx = external ? "ExternalTx" : "Tx";
 		ArrayList<Transaction> transactions = null;
@@ -256,7 +435,11 @@ public class IncomingMessage implements IncomingMessageHandler {
 
 		if (transactions == null) return;
 
+		int gossipTtl = Gossip.getTTL(root);
 		for(Transaction tx : transactions) {
+			if (gossipTtl > 0 && Gossip.INSTANCE.isSeen(tx.getTransactionHash()))
+				continue; // already received on another gossip path
+
 			Logger.STD.log(stx + " received: Sender " + tx.getSender() + ", Receiver " + tx.getReceiver() + ", Asset Name " + tx.getAssetName() +  ", Amount " + tx.getAmount());
 			//Logger.FULL.log(message);
 
@@ -270,8 +453,7 @@ public class IncomingMessage implements IncomingMessageHandler {
 			}
 
 			try {
-				KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-				PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(participant.getPublickey()));
+				PublicKey publicKey = participant.getDecodedPublicKey();
 
 				if (!Sign.verifySignature(tx, publicKey)) {
 					// invalid transaction
@@ -283,11 +465,20 @@ public class IncomingMessage implements IncomingMessageHandler {
 				e.printStackTrace();
 			}
 
+			// only verified Tx are marked, the hash does not cover the signature
+			if (!Gossip.INSTANCE.markSeen(tx.getTransactionHash()) && gossipTtl > 0)
+				continue; // received on another gossip path in the meantime
+
 			// send to local pool of unconfirmed transactions if not already known
 			if (ChainState.INSTANCE.existsUnconfirmedTransaction(tx) == false) {
 				ChainState.INSTANCE.addUnconfirmedTransaction(tx);
 			}
 
+			if (gossipTtl > 1) {
+				String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
+				Gossip.INSTANCE.broadcastTx(tx, gossipTtl - 1, sendingNode, tx.getSender());
+			}
+
 			if (external) {
 				// TODO: sign response
 				String response = "\"<?xml version=\\\"1.0\\\"?><ExternalResponse Type=\\\"TxAck\\\"><Signature></Signature></ExternalResponse>\"";
@@ -309,12 +500,50 @@ public class IncomingMessage implements IncomingMessageHandler {
 		// broadcast to network
 		// who sent this information?
 		//String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
-		// propagate new transaction to all other nodes, except the sending node and myself to prevent bouncing
-		//Client client = null;
-		ArrayList<Participant> participants = ChainState.INSTANCE.getAllOtherParticipants();
-		for (Participant p : participants) {
-			NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), new OutgoingMessageSerializer().serializeTxToString(tx));
+		// propagate new transaction to all other nodes (flood) or a random fan-out (gossip)
+		Gossip.INSTANCE.broadcastTx(tx, GlobalConfig.INSTANCE.GOSSIP_TTL);
+	}
+
+	private ArrayList<InventoryItem> parseInventoryItems(Element root) {
+		ArrayList<InventoryItem> items = new ArrayList<>();
+		Elements itemElements = root.getChildElements("Item");
+		for (int i = 0; i < itemElements.size(); i++) {
+			Element itemElement = itemElements.get(i);
+			String type = itemElement.getAttributeValue("Type");
+			long blockNumber = -1;
+			if (itemElement.getAttributeValue("BlockNumber") != null)
+				blockNumber = Long.parseLong(itemElement.getAttributeValue("BlockNumber"));
+			items.add(new InventoryItem(type, Base64Converter.decodeToByteArray(itemElement.getValue()), blockNumber));
+		}
+		return items;
+	}
+
+	private void processInventory(Element root) {
+		String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
+		Participant p = ChainState.INSTANCE.getParticipantByName(sendingNode);
+		if (p == null) {
+			Logger.STD.log("Inv from unknown participant " + sendingNode + " discarded");
+			return;
+		}
+
+		// blocks that are not longer than the current chain would be discarded anyway
+		long lastBlockNumber = ChainState.INSTANCE.getLastBlock().getBlockNumber();
+		ArrayList<InventoryItem> items = parseInventoryItems(root);
+		items.removeIf(item -> item.isBlock() && item.getBlockNumber() <= lastBlockNumber);
+
+		ArrayList<InventoryItem> missing = Inventory.INSTANCE.selectMissing(items);
+		if (!missing.isEmpty())
+			Inventory.INSTANCE.request(missing, p);
+	}
+
+	private void processGetData(Element root) {
+		String sendingNode = root.getChildElements("SendingNode").get(0).getValue();
+		Participant p = ChainState.INSTANCE.getParticipantByName(sendingNode);
+		if (p == null) {
+			Logger.STD.log("GetData from unknown participant " + sendingNode + " discarded");
+			return;
 		}
+		Inventory.INSTANCE.serve(parseInventoryItems(root), p);
 	}
 
 	private void processRequest(Element root, PrintWriter output){
@@ -438,22 +667,106 @@ public class IncomingMessage implements IncomingMessageHandler {
 	private void processGetAmount(Element root, PrintWriter output) {
 		String assetName = root.getChildElements("assetName").get(0).getValue();
 		long date = Long.valueOf(root.getChildElements("Date").get(0).getValue());
+		// optional quarter-hour slot of the day, end of day if missing
+		Integer slot = null;
+		if (root.getChildElements("Slot").size() != 0)
+			slot = Integer.valueOf(root.getChildElements("Slot").get(0).getValue());
 
 		AssetStateTable table = ChainState.INSTANCE.getAssetStateTable(assetName);
 		Element replyRoot;
 		if (table == null) {
 			replyRoot = new Element("Error");
 		}else {
+			HashMap<String, Integer> assets;
+			try {
+				assets = (slot == null) ? table.getAssets(date) : table.getAssets(date, slot);
+			} catch (IllegalArgumentException e) {
+				assets = null;
+			}
+
+			if (assets == null) {
+				replyRoot = new Element("Error");
+			} else {
+				replyRoot = new Element("AmountResponse");
+
+				for (String s : new TreeSet<String>(assets.keySet())) {
+					Element participant = new Element("Participant");
+					Element name = new Element("Name");
+					name.appendChild(s);
+					participant.appendChild(name);
+					Element amount = new Element("Amount");
+					amount.appendChild(assets.get(s) + "");
+					participant.appendChild(amount);
+					replyRoot.appendChild(participant);
+				}
+			}
+		}
+
+
+		Document replyDoc = new Document(replyRoot);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Serializer serializer = new Serializer(out, "UTF-8");
+			serializer.setLineSeparator("\n");
+			serializer.write(replyDoc);
+
+			sendResponse(out.toString(), output);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-			Set<String> participants = ((HashMap<String, Integer>) table.getAssets(date)).keySet();
+	// inclusion proof of a Tx in a block of the longest chain, only for blocks with a Merkle root
+	private void processGetMerkleProof(Element root, PrintWriter output) {
+		long blockNumber = Long.valueOf(root.getChildElements("BlockNumber").get(0).getValue());
+		byte[] txHash = Base64Converter.decodeToByteArray(root.getChildElements("TxHash").get(0).getValue());
 
-			replyRoot = new Element("AmountResponse");
+		Block block = null;
+		synchronized (ChainState.INSTANCE.getBlockchain()) {
+			try {
+				block = ChainState.INSTANCE.getBlockchain().getBlock(blockNumber);
+			} catch (InvalidBlockOrderException e) {
+				// unknown block number, reply with error
+			}
+		}
 
-			for (String s : participants) {
-				//TODO: Return the distribution of assets at a given time
+		int index = -1;
+		if (block != null && block.getVersion() >= Block.MERKLE_VERSION) {
+			ArrayList<Transaction> txs = block.getTransactions();
+			for (int i = 0; i < txs.size() && index == -1; i++) {
+				if (Arrays.equals(txs.get(i).getTransactionHash(), txHash))
+					index = i;
 			}
 		}
 
+		Element replyRoot;
+		if (index == -1) {
+			replyRoot = new Element("Error");
+		} else {
+			MerkleTree.Proof proof = block.getMerkleTree().getProof(index);
+			replyRoot = new Element("MerkleProof");
+
+			Element blockHash = new Element("BlockHash");
+			blockHash.appendChild(Base64Converter.encodeFromByteArray(block.getBlockHash()));
+			replyRoot.appendChild(blockHash);
+
+			Element merkleRoot = new Element("MerkleRoot");
+			merkleRoot.appendChild(Base64Converter.encodeFromByteArray(block.getMerkleRoot()));
+			replyRoot.appendChild(merkleRoot);
+
+			Element txIndex = new Element("Index");
+			txIndex.appendChild(String.valueOf(index));
+			replyRoot.appendChild(txIndex);
+
+			Element siblings = new Element("Siblings");
+			for (int i = 0; i < proof.getSiblings().size(); i++) {
+				Element sibling = new Element("Sibling");
+				sibling.addAttribute(new Attribute("position", proof.isSiblingOnLeft(i) ? "left" : "right"));
+				sibling.appendChild(Base64Converter.encodeFromByteArray(proof.getSiblings().get(i)));
+				siblings.appendChild(sibling);
+			}
+			replyRoot.appendChild(siblings);
+		}
 
 		Document replyDoc = new Document(replyRoot);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -468,6 +781,48 @@ public class IncomingMessage implements IncomingMessageHandler {
 		}
 	}
 
+	@Override
+	public void processMessage(String message, PrintWriter output, String peer) {
+		String type = (message == null) ? null : DuplicateFilter.getRootName(message);
+		if (type == null) {
+			processMessage(message, output);
+			return;
+		}
+
+		// nodes on the same host are told apart by their name, unknown names share the bucket of their address
+		String peerKey = DuplicateFilter.getPeerKey(message, peer);
+		long retryAfter = RateLimiter.INSTANCE.acquire(peerKey, type);
+		if (retryAfter > 0) {
+			rejectMessage(type, peerKey, retryAfter, output);
+			return;
+		}
+
+		// blocks and Tx received from several peers are processed once
+		if (DuplicateFilter.INSTANCE.isDuplicate(message, peer)) {
+			Logger.FULL.log("Duplicate message from " + peer + " discarded");
+			return;
+		}
+
+		if (!RateLimiter.INSTANCE.enter(!RateLimiter.isAnswered(type))) {
+			rejectMessage(type, peerKey, RateLimiter.IN_FLIGHT_RETRY_MILISECONDS, output);
+			return;
+		}
+		try {
+			processMessage(message, output);
+		} finally {
+			RateLimiter.INSTANCE.exit();
+		}
+	}
+
+	// answered messages get a Busy response, others are dropped
+	private void rejectMessage(String type, String peerKey, long retryAfter, PrintWriter output) {
+		if (RateLimiter.isAnswered(type)) {
+			sendResponse(RateLimiter.INSTANCE.getBusyMessage(retryAfter), output);
+		} else {
+			Logger.FULL.log(type + " from " + peerKey + " dropped due to rate limit");
+		}
+	}
+
 	@Override
 	public void processMessage(String message, PrintWriter output) {
 		//Logger.FULL.log("DEBUG: " + message);
@@ -489,15 +844,27 @@ public class IncomingMessage implements IncomingMessageHandler {
 			else if (type.equals("BlockList"))
 				processBlockList(root, output);
 			else if (type.equals("Block"))
-				processBlock(message);
+				processBlock(root, message);
 			 else if (type.equals("ExternalTx") || type.equals("ExternalUtilityTx"))
-				processTransaction(message, true, output);
+				processTransaction(root, message, true, output);
 			 else if (type.equals("Tx") || type.equals("UtilityTx"))
-				processTransaction(message, false, output);
+				processTransaction(root, message, false, output);
+			 else if (type.equals(CompactBlocks.COMPACT_BLOCK))
+				processCompactBlock(root);
+			 else if (type.equals(CompactBlocks.GET_BLOCK_TX))
+				processGetBlockTx(root);
+			 else if (type.equals(CompactBlocks.BLOCK_TX))
+				processBlockTx(root);
+			 else if (type.equals(Inventory.INV))
+				processInventory(root);
+			 else if (type.equals(Inventory.GET_DATA))
+				processGetData(root);
 			 else if (type.equals("Request"))
 				processRequest(root, output);
 			 else if (type.equals("GetAmount"))
 				processGetAmount(root, output);
+			 else if (type.equals("GetMerkleProof"))
+				processGetMerkleProof(root, output);
 
 		} catch (ParsingException | IOException e) {
 			e.printStackTrace();
@@ -9,12 +9,10 @@ package at.entrust.resselchain.chain;
 
 import java.io.IOException;
 import java.security.InvalidKeyException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.HashMap;
 import at.entrust.resselchain.config.GlobalConfig;
@@ -56,7 +54,26 @@ public class IncomingMessageSerializer {
 	}
 
 	public Block deserializeBlockFromElement(Element root) throws ValidityException, ParsingException, IOException {
+		Block block = deserializeBlockHeaderFromElement(root);
+		if (block == null)
+			return null;
+		
+		HashMap<Integer, Transaction> unorderedTransaction = new HashMap<>();
+		Elements transactions = root.getChildElements("Transactions").get(0).getChildElements();
+		for (int i = 0; i < transactions.size(); i++) {
+			Element tx = transactions.get(i);
+			int order = Integer.valueOf(tx.getAttribute("order").getValue());
+			unorderedTransaction.put(order, deserializeBlockTxFromElement(tx));
+		}
+		
+		for(int i = 0; i < transactions.size(); i++)
+			block.addTransaction(unorderedTransaction.get(i));
 
+		return verifyBlock(block) ? block : null;
+	}
+
+	// block without Tx, null if the version is unknown
+	public Block deserializeBlockHeaderFromElement(Element root) {
 		// TODO: proper error handling for parsing the XML document
 		long timestamp = Long.valueOf(root.getChildElements("Timestamp").get(0).getValue());
 		long blockNumber = Long.valueOf(root.getChildElements("BlockNumber").get(0).getValue());
@@ -67,106 +84,131 @@ public class IncomingMessageSerializer {
 		byte[] signature = Base64Converter.decodeToByteArray(root.getChildElements("Signature").get(0).getValue());
 		String tag = root.getChildElements("Tag").get(0).getValue();
 		
+		// blocks without version are legacy blocks
+		int version = Block.LEGACY_VERSION;
+		if (root.getChildElements("Version").size() != 0)
+			version = Integer.valueOf(root.getChildElements("Version").get(0).getValue());
+		if (version < Block.LEGACY_VERSION || version > Block.LATEST_VERSION) {
+			Logger.STD.log("Unknown block version " + version + ". Block will be discarded.");
+			return null;
+		}
+
 		Block block = new Block(timestamp, blockNumber, nonce, miner, difficulty, previousBlockhash, signature, tag);
+		block.setVersion(version);
+		return block;
+	}
+
+	// Tx element of a block, see OutgoingMessageSerializer.serializeBlockTxToElement
+	public Transaction deserializeBlockTxFromElement(Element tx) {
+		String sender = tx.getChildElements("Sender").get(0).getValue();
+		String receiver = tx.getChildElements("Receiver").get(0).getValue();
+		String assetName = tx.getChildElements("assetName").get(0).getValue();
+		long txTimestamp = Long.valueOf(tx.getChildElements("Timestamp").get(0).getValue());
+		int amount = Integer.valueOf(tx.getChildElements("Amount").get(0).getValue());
+		byte[] txSignature = Base64Converter.decodeToByteArray(tx.getChildElements("Signature").get(0).getValue());
+		String txTag = tx.getChildElements("Tag").get(0).getValue();
 		
+		Transaction transaction; // = new Transaction(sender, receiver, txTimestamp, amount, txSignature, txTag);
 		
-		HashMap<Integer, Transaction> unorderedTransaction = new HashMap<>();
-		Elements transactions = root.getChildElements("Transactions").get(0).getChildElements();
-		for (int i = 0; i < transactions.size(); i++) {
-			Element tx = transactions.get(i);
-			int order = Integer.valueOf(tx.getAttribute("order").getValue());
-			String sender = tx.getChildElements("Sender").get(0).getValue();
-			String receiver = tx.getChildElements("Receiver").get(0).getValue();
-			String assetName = tx.getChildElements("assetName").get(0).getValue();
-			long txTimestamp = Long.valueOf(tx.getChildElements("Timestamp").get(0).getValue());
-			int amount = Integer.valueOf(tx.getChildElements("Amount").get(0).getValue());
-			byte[] txSignature = Base64Converter.decodeToByteArray(tx.getChildElements("Signature").get(0).getValue());
-			String txTag = tx.getChildElements("Tag").get(0).getValue();
-			
-			Transaction transaction; // = new Transaction(sender, receiver, txTimestamp, amount, txSignature, txTag);
-			
-			// check if this is a utility Tx
-			if (tx.getLocalName().equals("UtilityTx")) {
+		// check if this is a utility Tx
+		if (tx.getLocalName().equals("UtilityTx")) {
 
-				ArrayList<Participant> participantsList = new ArrayList<>();
-				HashMap<Participant, Integer> AssetAmountList = new HashMap<>();
-				Elements participants = tx.getChildElements("Participants").get(0).getChildElements();
-				
-				for (int k = 0; k < participants.size(); k++) {
-					Participant p = new Participant(participants.get(k).getChildElements("Name").get(0).getValue(), Base64Converter.decodeToByteArray(participants.get(k).getChildElements("PublicKey").get(0).getValue()), participants.get(k).getChildElements("Address").get(0).getValue(), Integer.valueOf(participants.get(k).getChildElements("Port").get(0).getValue()));
-					participantsList.add(p);
-					
-					AssetAmountList.put(p, Integer.valueOf(participants.get(k).getChildElements("AssetAmount").get(0).getValue()));
-				}
+			ArrayList<Participant> participantsList = new ArrayList<>();
+			HashMap<Participant, Integer> AssetAmountList = new HashMap<>();
+			Elements participants = tx.getChildElements("Participants").get(0).getChildElements();
+			
+			for (int k = 0; k < participants.size(); k++) {
+				Participant p = new Participant(participants.get(k).getChildElements("Name").get(0).getValue(), Base64Converter.decodeToByteArray(participants.get(k).getChildElements("PublicKey").get(0).getValue()), participants.get(k).getChildElements("Address").get(0).getValue(), Integer.valueOf(participants.get(k).getChildElements("Port").get(0).getValue()));
+				participantsList.add(p);
 				
-				// utility Tx
-				transaction = new UtilityTransaction(sender, receiver, txTimestamp, amount, txSignature, txTag, assetName, participantsList, AssetAmountList);
-			} else {
-				// normal Tx
-				transaction = new Transaction(sender, receiver, txTimestamp, amount, txSignature, txTag, assetName);
+				AssetAmountList.put(p, Integer.valueOf(participants.get(k).getChildElements("AssetAmount").get(0).getValue()));
 			}
 			
-			
-			
-			// check signature of transaction
+			// utility Tx
+			transaction = new UtilityTransaction(sender, receiver, txTimestamp, amount, txSignature, txTag, assetName, participantsList, AssetAmountList);
+		} else {
+			// normal Tx
+			transaction = new Transaction(sender, receiver, txTimestamp, amount, txSignature, txTag, assetName);
+		}
+		// Tx without version are legacy Tx
+		if (tx.getChildElements("Version").size() != 0)
+			transaction.setVersion(Integer.valueOf(tx.getChildElements("Version").get(0).getValue()));
+
+		return transaction;
+	}
+
+	// checks the signatures of the Tx, the encoding and the signature of a received block
+	public boolean verifyBlock(Block block) {
+		// signatures are verified all at once
+		ArrayList<Transaction> txToVerify = block.getTransactions();
+		ArrayList<PublicKey> txPublicKeys = new ArrayList<>();
+		for (Transaction transaction : txToVerify) {
 			// if the signature for one transaction is invalid, the entire block is invalid!
-			Participant participant = ChainState.INSTANCE.getParticipantByName(sender);			
+			Participant participant = ChainState.INSTANCE.getParticipantByName(transaction.getSender());
 			if (participant == null) {
 				// invalid block
 				Logger.STD.log("Participant not known. Transaction invalid. Block will be discarded.");
-				return null;
+				return false;
 			}
 			
+			PublicKey publicKey = null; // signature cannot be checked without a key, Tx is not rejected
 			try {
-				KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-				PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(participant.getPublickey()));
-				
-				if (!Sign.verifySignature(transaction, publicKey)) {
-					// invalid block
-					Logger.STD.log("Transaction signature not valid. Block will be discarded.");
-					return null;
-				}
-				
-			} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException | InvalidKeySpecException e) {
+				publicKey = participant.getDecodedPublicKey();
+			} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
 				e.printStackTrace();
 			}
-			
-			unorderedTransaction.put(order, transaction);
+			txPublicKeys.add(publicKey);
+		}
+
+		long verifyStartTime = System.nanoTime();
+		if (!SignatureVerifier.INSTANCE.verifyTransactions(txToVerify, txPublicKeys)) {
+			// invalid block
+			Logger.STD.log("Transaction signature not valid. Block will be discarded.");
+			return false;
+		}
+		long verifyTime = System.nanoTime() - verifyStartTime;
+
+		if (!block.hasValidEncoding()) {
+			// invalid block
+			Logger.STD.log("Block or Tx version does not match the encoding required at block# " + block.getBlockNumber() + ". Block will be discarded.");
+			return false;
 		}
-		
-		for(int i = 0; i < transactions.size(); i++)
-			block.addTransaction(unorderedTransaction.get(i));
 						
 		// check block data, signature, validate transactions and try to append block if valid
 		// 1) check basic block data
-		if (difficulty != GlobalConfig.INSTANCE.DIFFICULTY) { // TODO: in future, adapt to dynamic difficulty
+		if (block.getDifficulty() != GlobalConfig.INSTANCE.DIFFICULTY) { // TODO: in future, adapt to dynamic difficulty
 			// invalid block
 			Logger.STD.log("Wrong value for difficulty. Block will be discarded.");
 		}
 		
 		// 2) check signature
-		Participant participant = ChainState.INSTANCE.getParticipantByName(miner);
+		Participant participant = ChainState.INSTANCE.getParticipantByName(block.getMiner());
 		if (participant == null) {
 			// invalid block
 			Logger.STD.log("Participant not known. Block will be discarded.");
-			return null;
+			return false;
 		}
 		
 		try {
-			KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-			PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(participant.getPublickey()));
+			PublicKey publicKey = participant.getDecodedPublicKey();
 			
-			if (!Sign.verifySignature(block, publicKey)) {
+			verifyStartTime = System.nanoTime();
+			boolean isValid = Sign.verifySignature(block, publicKey);
+			verifyTime += System.nanoTime() - verifyStartTime;
+			if (!isValid) {
 				// invalid block
 				Logger.STD.log("Block signature not valid. Block will be discarded.");
-				return null;
+				return false;
 			}
 			
 		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException | InvalidKeySpecException e) {
 			e.printStackTrace();
 		}
+
+		SignatureVerifier.INSTANCE.setLastBlockVerifyMicroseconds(verifyTime / 1000);
+		Logger.FULL.log("Verified signatures of block# " + block.getBlockNumber() + " with " + txToVerify.size() + " Tx in " + verifyTime / 1000 + "us");
 		
-		return block;		
+		return true;
 	}
 	
 	
@@ -203,6 +245,7 @@ public class IncomingMessageSerializer {
 		byte[] txSignature = Base64Converter.decodeToByteArray(root.getChildElements("Signature").get(0).getValue());
 		String txTag = root.getChildElements("Tag").get(0).getValue();
 		
+		Transaction transaction;
 		// check if this is a utility Tx
 		if (root.getLocalName().equals("ExternalUtilityTx") || root.getLocalName().equals("UtilityTx")) {
 			ArrayList<Participant> participantsList = new ArrayList<>();
@@ -217,10 +260,15 @@ public class IncomingMessageSerializer {
 			}
 			
 			// utility Tx
-			return new UtilityTransaction(sender, receiver, timestamp, amount, txSignature, txTag, assetName, participantsList, AssetAmountList);
+			transaction = new UtilityTransaction(sender, receiver, timestamp, amount, txSignature, txTag, assetName, participantsList, AssetAmountList);
 		} else {
 			// normal Tx
-			return new Transaction(sender, receiver, timestamp, amount, txSignature, txTag, assetName);
+			transaction = new Transaction(sender, receiver, timestamp, amount, txSignature, txTag, assetName);
 		}
+
+		// Tx without version are legacy Tx
+		if (root.getChildElements("Version").size() != 0)
+			transaction.setVersion(Integer.valueOf(root.getChildElements("Version").get(0).getValue()));
+		return transaction;
 	}
 }
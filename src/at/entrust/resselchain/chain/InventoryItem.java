@@ -0,0 +1,40 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.chain;
+
+/* A block or Tx announced in an Inv message or requested in a GetData message. */
+public class InventoryItem {
+	public static final String BLOCK = "Block";
+	public static final String TX = "Tx";
+
+	private final String type;
+	private final byte[] hash;
+	private final long blockNumber; // -1 for Tx
+
+	public InventoryItem(String type, byte[] hash, long blockNumber) {
+		this.type = type;
+		this.hash = hash;
+		this.blockNumber = blockNumber;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public boolean isBlock() {
+		return type.equals(BLOCK);
+	}
+
+	public byte[] getHash() {
+		return hash;
+	}
+
+	public long getBlockNumber() {
+		return blockNumber;
+	}
+}
@@ -26,9 +26,16 @@ public class OutgoingMessageSerializer {
 	}
 	
 	public String serializeBlockToString(Block block, boolean isSyncResponse) {
+		return serializeBlockToString(block, isSyncResponse, 0);
+	}
+
+	// gossipTtl > 0 adds the remaining hops for gossip relaying
+	public String serializeBlockToString(Block block, boolean isSyncResponse, int gossipTtl) {
 		// serialize block to XML
 	
 		Element root = serializeBlockToElement(block, isSyncResponse);
+		if (gossipTtl > 0)
+			appendGossipTTL(root, gossipTtl);
 
 		Document doc = new Document(root);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -49,6 +56,26 @@ public class OutgoingMessageSerializer {
 		// serialize block to XML
 				
 		Element root = new Element((isSyncResponse ? "SyncBlock" : "Block"));
+		appendBlockHeader(root, block);
+		
+		Element transactions = new Element("Transactions");
+		root.appendChild(transactions);
+		int order = 0;
+		for(Transaction tx : block.getTransactions())
+			transactions.appendChild(serializeBlockTxToElement(tx, order++));
+
+		return root;
+	}
+
+	// header fields of a block, followed by the sending node
+	private void appendBlockHeader(Element root, Block block) {
+		// legacy blocks are sent without version, as before
+		if (block.getVersion() != Block.LEGACY_VERSION) {
+			Element version = new Element("Version");
+			version.appendChild(String.valueOf(block.getVersion()));
+			root.appendChild(version);
+		}
+
 		Element timestamp = new Element("Timestamp");
 		timestamp.appendChild(String.valueOf(block.getTimestamp()));
 		root.appendChild(timestamp);
@@ -89,91 +116,96 @@ public class OutgoingMessageSerializer {
 		Element sendingNode = new Element("SendingNode");
 		sendingNode.appendChild(GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getName());
 		root.appendChild(sendingNode);
+	}
+
+	// Tx of a block, order is the position of the Tx in the block
+	public Element serializeBlockTxToElement(Transaction tx, int order) {
+		String type;
+		if (tx instanceof UtilityTransaction)
+			type = "UtilityTx";
+		else
+			type = "Tx";
 		
+		Element transaction = new Element(type);
+		transaction.addAttribute(new Attribute("order", String.valueOf(order)));
 		
-		Element transactions = new Element("Transactions");
-		root.appendChild(transactions);
-		int order = 0;
-		for(Transaction tx : block.getTransactions()) {
-			
-			String type;
-			if (tx instanceof UtilityTransaction)
-				type = "UtilityTx";
-			else
-				type = "Tx";
-			
-			Element transaction = new Element(type);
-			transaction.addAttribute(new Attribute("order", String.valueOf(order++)));
-			
-			Element timestampTx = new Element("Timestamp");
-			timestampTx.appendChild(String.valueOf(tx.getTimestamp()));
-			transaction.appendChild(timestampTx);
+		Element timestampTx = new Element("Timestamp");
+		timestampTx.appendChild(String.valueOf(tx.getTimestamp()));
+		transaction.appendChild(timestampTx);
 
-			Element sender = new Element("Sender");
-			sender.appendChild(tx.getSender());
-			transaction.appendChild(sender);
-			
-			Element receiver = new Element("Receiver");
-			receiver.appendChild(tx.getReceiver());
-			transaction.appendChild(receiver);
-			
-			Element assetName = new Element("assetName");
-			assetName.appendChild(tx.getAssetName());
-			transaction.appendChild(assetName);
-			
-			Element amount = new Element("Amount");
-			amount.appendChild(String.valueOf(tx.getAmount()));
-			transaction.appendChild(amount);
-			
-			Element txSignature = new Element("Signature");
-			txSignature.appendChild(Base64Converter.encodeFromByteArray(tx.getSignature()));
-			transaction.appendChild(txSignature);
+		Element sender = new Element("Sender");
+		sender.appendChild(tx.getSender());
+		transaction.appendChild(sender);
+		
+		Element receiver = new Element("Receiver");
+		receiver.appendChild(tx.getReceiver());
+		transaction.appendChild(receiver);
+		
+		Element assetName = new Element("assetName");
+		assetName.appendChild(tx.getAssetName());
+		transaction.appendChild(assetName);
+		
+		Element amount = new Element("Amount");
+		amount.appendChild(String.valueOf(tx.getAmount()));
+		transaction.appendChild(amount);
+		
+		Element txSignature = new Element("Signature");
+		txSignature.appendChild(Base64Converter.encodeFromByteArray(tx.getSignature()));
+		transaction.appendChild(txSignature);
+		
+		Element txTag = new Element("Tag");
+		txTag.appendChild(tx.getTag());
+		transaction.appendChild(txTag);
+
+		// legacy Tx are sent without version
+		if (tx.getVersion() != Transaction.LEGACY_VERSION) {
+			Element txVersion = new Element("Version");
+			txVersion.appendChild(String.valueOf(tx.getVersion()));
+			transaction.appendChild(txVersion);
+		}
+		
+		// for utility Tx
+		if (tx instanceof UtilityTransaction) {
 			
-			Element txTag = new Element("Tag");
-			txTag.appendChild(tx.getTag());
-			transaction.appendChild(txTag);
+			ArrayList<Participant> participants = ((UtilityTransaction)tx).getParticipants();
+			HashMap<Participant, Integer> participantAmounts = ((UtilityTransaction)tx).getParticipantShares();
 			
-			// for utility Tx
-			if (tx instanceof UtilityTransaction) {
+			Element pElements = new Element("Participants");
+			transaction.appendChild(pElements);
+			for (Participant p : participants) {
+				Element pElement = new Element("Participant");
+				pElements.appendChild(pElement);
 				
-				ArrayList<Participant> participants = ((UtilityTransaction)tx).getParticipants();
-				HashMap<Participant, Integer> participantAmounts = ((UtilityTransaction)tx).getParticipantShares();
+				Element pName = new Element("Name");
+				pName.appendChild(p.getName());
+				pElement.appendChild(pName);
 				
-				Element pElements = new Element("Participants");
-				transaction.appendChild(pElements);
-				for (Participant p : participants) {
-					Element pElement = new Element("Participant");
-					pElements.appendChild(pElement);
-					
-					Element pName = new Element("Name");
-					pName.appendChild(p.getName());
-					pElement.appendChild(pName);
-					
-					Element pPublicKey = new Element("PublicKey");
-					pPublicKey.appendChild(Base64Converter.encodeFromByteArray(p.getPublickey()));
-					pElement.appendChild(pPublicKey);
-					
-					Element pAddress = new Element("Address");
-					pAddress.appendChild(p.getAddress());
-					pElement.appendChild(pAddress);
-					
-					Element pPort = new Element("Port");
-					pPort.appendChild(String.valueOf(p.getPort()));
-					pElement.appendChild(pPort);
-					
-					Element pAssetAmount = new Element("AssetAmount");
-					pAssetAmount.appendChild(String.valueOf(participantAmounts.get(p)));
-					pElement.appendChild(pAssetAmount);
-				}
+				Element pPublicKey = new Element("PublicKey");
+				pPublicKey.appendChild(Base64Converter.encodeFromByteArray(p.getPublickey()));
+				pElement.appendChild(pPublicKey);
+				
+				Element pAddress = new Element("Address");
+				pAddress.appendChild(p.getAddress());
+				pElement.appendChild(pAddress);
+				
+				Element pPort = new Element("Port");
+				pPort.appendChild(String.valueOf(p.getPort()));
+				pElement.appendChild(pPort);
+				
+				Element pAssetAmount = new Element("AssetAmount");
+				pAssetAmount.appendChild(String.valueOf(participantAmounts.get(p)));
+				pElement.appendChild(pAssetAmount);
 			}
-			
-			transactions.appendChild(transaction);
 		}
 
-		return root;
+		return transaction;
 	}
 	
 	public String serializeTxToString(Transaction tx) {
+		return serializeTxToString(tx, 0);
+	}
+
+	public String serializeTxToString(Transaction tx, int gossipTtl) {
 		// serialize transaction to XML
 		
 		String type;
@@ -211,11 +243,20 @@ public class OutgoingMessageSerializer {
 		txTag.appendChild(tx.getTag());
 		root.appendChild(txTag);
 
+		// legacy Tx are sent without version
+		if (tx.getVersion() != Transaction.LEGACY_VERSION) {
+			Element txVersion = new Element("Version");
+			txVersion.appendChild(String.valueOf(tx.getVersion()));
+			root.appendChild(txVersion);
+		}
+
 		
 		// Node that sends this information (this field is just for P2P routing)
 		Element sendingNode = new Element("SendingNode");
 		sendingNode.appendChild(GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getName());
 		root.appendChild(sendingNode);
+		if (gossipTtl > 0)
+			appendGossipTTL(root, gossipTtl);
 		
 		// for utility Tx
 		if (tx instanceof UtilityTransaction) {
@@ -300,4 +341,118 @@ public class OutgoingMessageSerializer {
 		}
 		return null;
 	}
+
+	// header and short Tx ids of a block, see CompactBlocks
+	public String serializeCompactBlockToString(Block block, int gossipTtl) {
+
+		Element root = new Element(CompactBlocks.COMPACT_BLOCK);
+		appendBlockHeader(root, block);
+		if (gossipTtl > 0)
+			appendGossipTTL(root, gossipTtl);
+
+		byte[] blockHash = block.getBlockHash();
+		StringBuilder sb = new StringBuilder();
+		for (Transaction tx : block.getTransactions()) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(Base64Converter.encodeFromByteArray(CompactBlocks.getShortId(blockHash, tx)));
+		}
+		Element shortIds = new Element("ShortIds");
+		shortIds.appendChild(sb.toString());
+		root.appendChild(shortIds);
+
+		return toMessageString(root);
+	}
+
+	// indexes of the Tx of a compact block that are missing
+	public String serializeGetBlockTxToString(byte[] blockHash, ArrayList<Integer> indexes) {
+
+		Element root = new Element(CompactBlocks.GET_BLOCK_TX);
+
+		Element hash = new Element("Hash");
+		hash.appendChild(Base64Converter.encodeFromByteArray(blockHash));
+		root.appendChild(hash);
+
+		StringBuilder sb = new StringBuilder();
+		for (int index : indexes) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(index);
+		}
+		Element indexElement = new Element("Indexes");
+		indexElement.appendChild(sb.toString());
+		root.appendChild(indexElement);
+
+		Element sendingNode = new Element("SendingNode");
+		sendingNode.appendChild(GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getName());
+		root.appendChild(sendingNode);
+
+		return toMessageString(root);
+	}
+
+	// the requested Tx of a block, the order attribute is the index in the block
+	public String serializeBlockTxToString(Block block, ArrayList<Integer> indexes) {
+
+		Element root = new Element(CompactBlocks.BLOCK_TX);
+
+		Element hash = new Element("Hash");
+		hash.appendChild(Base64Converter.encodeFromByteArray(block.getBlockHash()));
+		root.appendChild(hash);
+
+		Element transactions = new Element("Transactions");
+		root.appendChild(transactions);
+		for (int index : indexes) {
+			if (index >= 0 && index < block.getTransactions().size())
+				transactions.appendChild(serializeBlockTxToElement(block.getTransactions().get(index), index));
+		}
+
+		Element sendingNode = new Element("SendingNode");
+		sendingNode.appendChild(GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getName());
+		root.appendChild(sendingNode);
+
+		return toMessageString(root);
+	}
+
+	// messageType is Inv (announcement) or GetData (request)
+	public String serializeInventoryToString(String messageType, ArrayList<InventoryItem> items) {
+
+		Element root = new Element(messageType);
+
+		for (InventoryItem item : items) {
+			Element itemElement = new Element("Item");
+			itemElement.addAttribute(new Attribute("Type", item.getType()));
+			if (item.isBlock())
+				itemElement.addAttribute(new Attribute("BlockNumber", String.valueOf(item.getBlockNumber())));
+			itemElement.appendChild(Base64Converter.encodeFromByteArray(item.getHash()));
+			root.appendChild(itemElement);
+		}
+
+		Element sendingNode = new Element("SendingNode");
+		sendingNode.appendChild(GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getName());
+		root.appendChild(sendingNode);
+
+		return toMessageString(root);
+	}
+
+	private String toMessageString(Element root) {
+		Document doc = new Document(root);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Serializer serializer = new Serializer(out, "UTF-8");
+			serializer.setLineSeparator("\n");
+			serializer.write(doc);
+
+			return out.toString().replace('\n', ' ');
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private void appendGossipTTL(Element root, int gossipTtl) {
+		Element ttl = new Element("GossipTTL");
+		ttl.appendChild(String.valueOf(gossipTtl));
+		root.appendChild(ttl);
+	}
 }
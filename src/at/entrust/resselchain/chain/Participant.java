@@ -8,27 +8,42 @@
 package at.entrust.resselchain.chain;
 
 import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 
+import at.entrust.resselchain.utils.SignatureScheme;
+
 public class Participant implements Serializable {
 
+	// UID of the class before the cached key was added, so stored chain states can still be read
+	private static final long serialVersionUID = -6880236242058858338L;
+
 	String name;
 	byte[] publickey;
 	String address; // IP-Address
 	int port; // Port this participant listens on
 	String specialRole;
+	SignatureScheme signatureScheme; // null if not configured, the scheme is then derived from the key
+	private transient volatile PublicKey decodedPublicKey = null; // decoded from publickey on first use
 	
 	public Participant(String name, byte[] publickey, String address, int port) {
 		this(name, publickey, address, port, null);
 	}
 	
 	public Participant(String name, byte[] publickey, String address, int port, String specialRole) {
+		this(name, publickey, address, port, specialRole, null);
+	}
+
+	public Participant(String name, byte[] publickey, String address, int port, String specialRole, SignatureScheme signatureScheme) {
 		super();
 		this.name = name;
 		this.publickey = publickey;
 		this.address = address;
 		this.port = port;
 		this.specialRole = specialRole;
+		this.signatureScheme = signatureScheme;
 	}
 	
 	public Participant(String name) {
@@ -88,6 +103,21 @@ public class Participant implements Serializable {
 	public byte[] getPublickey() {
 		return publickey;
 	}
+
+	// the key is decoded once, a reloaded configuration creates new participants and thus new keys
+	public PublicKey getDecodedPublicKey() throws NoSuchAlgorithmException, InvalidKeySpecException {
+		PublicKey key = decodedPublicKey;
+		if (key == null) {
+			key = (signatureScheme == null) ? SignatureScheme.decodeAnyPublicKey(publickey) : signatureScheme.decodePublicKey(publickey);
+			decodedPublicKey = key;
+		}
+		return key;
+	}
+
+	// not part of equals and hashCode, participants in utility Tx do not carry a scheme
+	public SignatureScheme getSignatureScheme() {
+		return signatureScheme;
+	}
 	
 	public String getAddress() {
 		return address;
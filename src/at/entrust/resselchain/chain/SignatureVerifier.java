@@ -0,0 +1,112 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.chain;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+import at.entrust.resselchain.utils.Sign;
+
+/* Verifies the Tx signatures of a block on a bounded pool of worker threads.
+ * Tx are split into one chunk per thread, all chunks stop as soon as one invalid signature is found. */
+public enum SignatureVerifier {
+	INSTANCE;
+
+	// blocks with fewer Tx are verified on the calling thread
+	private static final int MIN_PARALLEL_TX = 16;
+
+	private final int threads = Math.max(1, GlobalConfig.INSTANCE.VERIFY_THREADS);
+	private final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+		Thread t = new Thread(r);
+		t.setName("SignatureVerifier");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private volatile long lastBlockVerifyMicroseconds = -1;
+
+	// returns false if at least one signature is invalid or its check fails unexpectedly
+	// a Tx without a public key (null, e.g. the key could not be decoded) is not checked and does not invalidate the block, as before
+	public boolean verifyTransactions(ArrayList<Transaction> txs, ArrayList<PublicKey> publicKeys) {
+		if (threads == 1 || txs.size() < MIN_PARALLEL_TX)
+			return verifyChunk(txs, publicKeys, 0, txs.size(), new AtomicBoolean(false));
+
+		AtomicBoolean failed = new AtomicBoolean(false);
+		ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<>(pool);
+		ArrayList<Future<Boolean>> futures = new ArrayList<>();
+		int chunkSize = (txs.size() + threads - 1) / threads;
+		for (int from = 0; from < txs.size(); from += chunkSize) {
+			int start = from;
+			int end = Math.min(from + chunkSize, txs.size());
+			futures.add(completion.submit(() -> verifyChunk(txs, publicKeys, start, end, failed)));
+		}
+
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				if (!completion.take().get()) {
+					failed.set(true);
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			Logger.ERR.log("Error while verifying Tx signatures: " + e.getCause());
+			return false;
+		} finally {
+			for (Future<Boolean> f : futures)
+				f.cancel(true);
+		}
+	}
+
+	private static boolean verifyChunk(ArrayList<Transaction> txs, ArrayList<PublicKey> publicKeys, int start, int end, AtomicBoolean failed) {
+		for (int i = start; i < end; i++) {
+			if (failed.get())
+				return false; // another chunk has already found an invalid signature
+			PublicKey publicKey = publicKeys.get(i);
+			if (publicKey == null)
+				continue;
+			try {
+				if (!Sign.verifySignature(txs.get(i), publicKey)) {
+					failed.set(true);
+					return false;
+				}
+			} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				// same result on the calling thread and on the pool
+				Logger.ERR.log("Error while verifying Tx signatures: " + e);
+				failed.set(true);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void setLastBlockVerifyMicroseconds(long microseconds) {
+		lastBlockVerifyMicroseconds = microseconds;
+	}
+
+	// time spent verifying all signatures of the last block received, -1 if no block has been received yet
+	public long getLastBlockVerifyMicroseconds() {
+		return lastBlockVerifyMicroseconds;
+	}
+}
@@ -9,11 +9,17 @@ package at.entrust.resselchain.chain;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import at.entrust.resselchain.utils.BinaryEncoder;
 import at.entrust.resselchain.utils.Hash;
 
 public class Transaction implements Serializable {
 
 	private static final long serialVersionUID = 4001966383785922506L;
+
+	// version 1: hash over concatenated text fields, version 2: hash over the canonical binary encoding
+	public static final int LEGACY_VERSION = 1;
+	public static final int BINARY_VERSION = 2;
+
 	protected String sender;
 	protected String receiver;
 	protected String assetName;
@@ -22,6 +28,8 @@ public class Transaction implements Serializable {
 	protected byte[] signature;
 	protected String tag;
 	private boolean isExternal;
+	private transient volatile byte[] transactionHash = null; // hashed fields never change, see computeTransactionHash
+	private int version = LEGACY_VERSION; // 0 in Tx stored before versions existed
 
 	public Transaction(String sender, String receiver, long timestamp, int amount, byte[] signature, String tag, String assetName) {
 		this(sender, receiver, timestamp, amount, signature, tag, false, assetName);
@@ -51,7 +59,17 @@ public class Transaction implements Serializable {
 	}
 			
 	
+	// the returned array is shared, do not modify it
 	public byte[] getTransactionHash() {
+		if (transactionHash == null)
+			transactionHash = computeTransactionHash();
+		return transactionHash;
+	}
+	
+	protected byte[] computeTransactionHash() {
+		if (getVersion() >= BINARY_VERSION)
+			return encode(BinaryEncoder.get()).hash();
+
 		// append all data fields
 		StringBuilder sb = new StringBuilder();
 		sb.append(sender);
@@ -78,6 +96,7 @@ public class Transaction implements Serializable {
 		result = prime * result + Arrays.hashCode(signature);
 		result = prime * result + ((tag == null) ? 0 : tag.hashCode());
 		result = prime * result + (int) (timestamp ^ (timestamp >>> 32));
+		result = prime * result + getVersion();
 		return result;
 	}
 
@@ -90,6 +109,9 @@ public class Transaction implements Serializable {
 		if (!(obj instanceof Transaction))
 			return false;
 		Transaction other = (Transaction) obj;
+		// different hashes imply different fields, only compare hashes if both are known already
+		if (transactionHash != null && other.transactionHash != null && !Arrays.equals(transactionHash, other.transactionHash))
+			return false;
 		if (assetName == null) {
 			if (other.assetName != null)
 				return false;
@@ -118,6 +140,8 @@ public class Transaction implements Serializable {
 			return false;
 		if (timestamp != other.timestamp)
 			return false;
+		if (getVersion() != other.getVersion())
+			return false;
 		return true;
 	}
 
@@ -156,5 +180,27 @@ public class Transaction implements Serializable {
 	public String getAssetName() {
 		return assetName;
 	}
+
+	public int getVersion() {
+		return (version == 0) ? LEGACY_VERSION : version;
+	}
+
+	// set the version before signing, the hash depends on it
+	public void setVersion(int version) {
+		this.version = version;
+		this.transactionHash = null;
+	}
+
+	// canonical binary encoding used for hashing (version 2)
+	protected BinaryEncoder encode(BinaryEncoder encoder) {
+		encoder.putInt(getVersion());
+		encoder.putString(sender);
+		encoder.putString(receiver);
+		encoder.putString(assetName);
+		encoder.putLong(timestamp);
+		encoder.putInt(amount);
+		encoder.putString(tag);
+		return encoder;
+	}
 	
 }
@@ -10,8 +10,10 @@ package at.entrust.resselchain.chain;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 
+import at.entrust.resselchain.utils.BinaryEncoder;
 import at.entrust.resselchain.utils.Hash;
 
 public class UtilityTransaction extends Transaction implements Serializable {
@@ -32,8 +34,11 @@ public class UtilityTransaction extends Transaction implements Serializable {
 	}
 	
 	@Override
-	public byte[] getTransactionHash() {
-		// append all data fields
+	protected byte[] computeTransactionHash() {
+		if (getVersion() >= BINARY_VERSION)
+			return encode(BinaryEncoder.get()).hash();
+
+		// append all data fields (Note: order of participantAmounts is undefined, kept for legacy Tx)
 		StringBuilder sb = new StringBuilder();
 		sb.append(sender);
 		sb.append(receiver);
@@ -66,6 +71,29 @@ public class UtilityTransaction extends Transaction implements Serializable {
 		return Hash.hash(sb.toString());
 	}
 	
+	@Override
+	protected BinaryEncoder encode(BinaryEncoder encoder) {
+		super.encode(encoder);
+
+		encoder.putInt(participants.size());
+		for (Participant p : participants) {
+			encoder.putString(p.getName());
+			encoder.putString(p.getAddress());
+			encoder.putInt(p.getPort());
+			encoder.putBytes(p.getPublickey());
+		}
+
+		// amounts in a defined order
+		ArrayList<Participant> amountParticipants = new ArrayList<>(participantAmounts.keySet());
+		amountParticipants.sort(Comparator.comparing(Participant::getName).thenComparingInt(Participant::getPort));
+		encoder.putInt(amountParticipants.size());
+		for (Participant p : amountParticipants) {
+			encoder.putString(p.getName());
+			encoder.putInt(participantAmounts.get(p));
+		}
+		return encoder;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,184 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import at.entrust.resselchain.config.GlobalConfig;
+
+/* Keeps TLS connections for request/response exchanges (sync requests, status polls) open between requests.
+ * A connection is used by one request at a time, the server answers the requests of a connection in order,
+ * so the next line received is the response. A connection that timed out or failed is closed, as a late
+ * response would otherwise be taken for the response of the next request.
+ * New connections are created with the peer's host and port, so the TLS session of an earlier connection
+ * is resumed from the session cache of the default SSLContext instead of doing a full handshake. */
+public enum ConnectionPool {
+	INSTANCE;
+
+	private final ConcurrentHashMap<String, ConcurrentLinkedDeque<PooledConnection>> idleConnections = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r);
+		t.setName("Connection Pool");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private ConnectionPool() {
+		long interval = Math.max(1000, GlobalConfig.INSTANCE.CONNECTION_POOL_IDLE_TIMEOUT_MILISECONDS / 2);
+		cleaner.scheduleWithFixedDelay(this::closeExpired, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private static class PooledConnection {
+		private final String id;
+		private final SSLSocket socket;
+		private final PrintWriter output;
+		private final BufferedReader input;
+		private long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(String id, SSLSocket socket) throws IOException {
+			this.id = id;
+			this.socket = socket;
+			this.output = new PrintWriter(socket.getOutputStream());
+			this.input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		}
+
+		// returns null if the server has closed the connection
+		String exchange(String message, int timeout) throws IOException {
+			socket.setSoTimeout(timeout);
+			output.println(message);
+			output.flush();
+			if (output.checkError())
+				throw new IOException("Connection to " + id + " closed");
+			return input.readLine();
+		}
+
+		boolean isExpired(long now) {
+			return socket.isClosed() || now - lastUsed > GlobalConfig.INSTANCE.CONNECTION_POOL_IDLE_TIMEOUT_MILISECONDS;
+		}
+
+		void close() {
+			try {
+				output.println("EOL");
+				output.flush();
+				socket.close();
+			} catch (IOException e) {
+				// connection is discarded anyway
+			}
+		}
+	}
+
+	// sends a single line and returns the response line
+	public String request(String address, int port, String message, int timeout) throws IOException {
+		String id = address + ":" + port;
+		PooledConnection connection = checkout(id);
+		if (connection != null) {
+			try {
+				String response = connection.exchange(message, timeout);
+				if (response != null) {
+					checkin(connection);
+					return response;
+				}
+			} catch (SocketTimeoutException e) {
+				connection.close();
+				throw e; // the peer is slow, a new connection would not help
+			} catch (IOException e) {
+				// closed by the peer while idle, retry on a new connection
+			}
+			connection.close();
+		}
+
+		connection = open(id, address, port, timeout);
+		try {
+			String response = connection.exchange(message, timeout);
+			if (response == null)
+				throw new EOFException("Connection to " + id + " closed without response");
+			checkin(connection);
+			return response;
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	private PooledConnection open(String id, String address, int port, int timeout) throws IOException {
+		Socket plainSocket = new Socket();
+		try {
+			plainSocket.connect(new InetSocketAddress(address, port), timeout);
+			plainSocket.setSoTimeout(timeout); // also limits the handshake
+			// host and port of the peer allow resuming a cached TLS session
+			SSLSocket socket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(plainSocket, address, port, true);
+			socket.setEnabledCipherSuites(new String[] { GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE });
+			socket.startHandshake();
+			return new PooledConnection(id, socket);
+		} catch (IOException e) {
+			plainSocket.close();
+			throw e;
+		}
+	}
+
+	private PooledConnection checkout(String id) {
+		ConcurrentLinkedDeque<PooledConnection> idle = idleConnections.get(id);
+		if (idle == null)
+			return null;
+
+		long now = System.currentTimeMillis();
+		PooledConnection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			if (!connection.isExpired(now))
+				return connection;
+			connection.close();
+		}
+		return null;
+	}
+
+	private void checkin(PooledConnection connection) {
+		connection.lastUsed = System.currentTimeMillis();
+		ConcurrentLinkedDeque<PooledConnection> idle = idleConnections.computeIfAbsent(connection.id, s -> new ConcurrentLinkedDeque<>());
+		if (idle.size() >= GlobalConfig.INSTANCE.CONNECTION_POOL_MAX_IDLE_PER_PEER) {
+			connection.close();
+			return;
+		}
+		idle.addFirst(connection); // most recently used first, so rarely used connections expire
+	}
+
+	private void closeExpired() {
+		long now = System.currentTimeMillis();
+		for (ConcurrentLinkedDeque<PooledConnection> idle : idleConnections.values()) {
+			Iterator<PooledConnection> it = idle.iterator();
+			while (it.hasNext()) {
+				PooledConnection connection = it.next();
+				if (connection.isExpired(now) && idle.remove(connection))
+					connection.close();
+			}
+		}
+	}
+
+	public void closeAll() {
+		for (ConcurrentLinkedDeque<PooledConnection> idle : idleConnections.values()) {
+			PooledConnection connection;
+			while ((connection = idle.pollFirst()) != null)
+				connection.close();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+
+/* Creates the threads that block on sockets: connection handlers of the server, WorkerThread senders
+ * and SyncClient requests. In virtual mode these are virtual threads, so thousands of connections
+ * only cost a few platform threads. Virtual threads are looked up by reflection (Java 21 or later);
+ * on older Java versions platform threads are used. */
+public enum ConnectionThreads {
+	INSTANCE;
+
+	public static final String PLATFORM_MODE = "platform";
+	public static final String VIRTUAL_MODE = "virtual";
+
+	private Object virtualBuilder = null;
+	private Method builderName = null;
+	private Method builderUnstarted = null;
+	private final ExecutorService executor;
+
+	private ConnectionThreads() {
+		ExecutorService virtualExecutor = null;
+		if (GlobalConfig.INSTANCE.CONNECTION_THREAD_MODE.equals(VIRTUAL_MODE)) {
+			try {
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builderName = builderClass.getMethod("name", String.class);
+				builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+				virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+				virtualExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+				Logger.ERR.log("Virtual threads are not available on this Java version, using platform threads");
+				virtualBuilder = null;
+			}
+		}
+
+		if (virtualExecutor != null) {
+			executor = virtualExecutor;
+		} else {
+			executor = Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r);
+				t.setName("Connection Thread");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	public boolean isVirtual() {
+		return virtualBuilder != null;
+	}
+
+	// returns an unstarted thread
+	public Thread newThread(Runnable task, String name) {
+		if (isVirtual()) {
+			try {
+				// the builder is not thread-safe
+				synchronized (virtualBuilder) {
+					return (Thread) builderUnstarted.invoke(builderName.invoke(virtualBuilder, name), task);
+				}
+			} catch (ReflectiveOperationException e) {
+				e.printStackTrace();
+			}
+		}
+		return new Thread(task, name);
+	}
+
+	// runs short-lived blocking tasks, e.g. requests
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import at.entrust.resselchain.chain.Block;
+import at.entrust.resselchain.chain.CompactBlocks;
+import at.entrust.resselchain.chain.InventoryItem;
+import at.entrust.resselchain.chain.OutgoingMessageSerializer;
+import at.entrust.resselchain.chain.Participant;
+import at.entrust.resselchain.chain.Transaction;
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+import at.entrust.resselchain.state.ChainState;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.LruCache;
+
+/* Broadcast of blocks and Tx to the other participants.
+ * Flood mode: the creator sends to all participants, nobody relays (O(N) messages per node).
+ * Gossip mode: every node sends to GossipFanout random participants, messages carry a GossipTTL element
+ * that is decreased on every hop; a node relays a message the first time it sees it while the TTL is above 1.
+ * With InventoryAnnouncements the receivers get an Inv and fetch the message (see Inventory). */
+public enum Gossip {
+	INSTANCE;
+
+	public static final String FLOOD_MODE = "flood";
+	public static final String GOSSIP_MODE = "gossip";
+
+	private final LruCache<String, Boolean> seen = new LruCache<>(GlobalConfig.INSTANCE.GOSSIP_SEEN_CACHE_SIZE);
+	private final Random random = new Random();
+
+	public boolean isEnabled() {
+		return GlobalConfig.INSTANCE.BROADCAST_MODE.equals(GOSSIP_MODE);
+	}
+
+	// returns false if the message has been seen before, marks it as seen otherwise
+	public boolean markSeen(byte[] messageId) {
+		String id = Base64Converter.encodeFromByteArray(messageId);
+		synchronized (seen) {
+			return seen.put(id, Boolean.TRUE) == null;
+		}
+	}
+
+	public boolean isSeen(byte[] messageId) {
+		String id = Base64Converter.encodeFromByteArray(messageId);
+		synchronized (seen) {
+			return seen.containsKey(id);
+		}
+	}
+
+	// TTL of a received message, 0 if it has not been sent by gossip
+	public static int getTTL(nu.xom.Element root) {
+		if (root.getChildElements("GossipTTL").size() == 0)
+			return 0;
+		return Integer.parseInt(root.getChildElements("GossipTTL").get(0).getValue());
+	}
+
+	// sends a new or relayed block, participants in exclude (e.g. sender and miner) do not get it
+	public void broadcastBlock(Block block, int ttl, String... exclude) {
+		markSeen(block.getBlockHash());
+		int gossipTtl = isEnabled() ? ttl : 0;
+		String serializedBlock;
+		if (CompactBlocks.INSTANCE.isEnabled() && CompactBlocks.isSupported(block)) {
+			CompactBlocks.INSTANCE.rememberSentBlock(block); // for GetBlockTx requests
+			serializedBlock = new OutgoingMessageSerializer().serializeCompactBlockToString(block, gossipTtl);
+		} else {
+			serializedBlock = new OutgoingMessageSerializer().serializeBlockToString(block, false, gossipTtl);
+		}
+		if (Inventory.INSTANCE.isEnabled()) {
+			InventoryItem item = new InventoryItem(InventoryItem.BLOCK, block.getBlockHash(), block.getBlockNumber());
+			Inventory.INSTANCE.announce(item, serializedBlock, selectReceivers(exclude));
+			return;
+		}
+		for (Participant p : selectReceivers(exclude)) {
+			Logger.STD.logImportant("Send block to " + p.getName());
+			NewClient.INSTANCE.sendBlock(p.getAddress(), p.getPort(), serializedBlock);
+		}
+	}
+
+	public void broadcastTx(Transaction tx, int ttl, String... exclude) {
+		markSeen(tx.getTransactionHash());
+		int gossipTtl = isEnabled() ? ttl : 0;
+		String serializedTx = new OutgoingMessageSerializer().serializeTxToString(tx, gossipTtl);
+		if (Inventory.INSTANCE.isEnabled()) {
+			Inventory.INSTANCE.announce(new InventoryItem(InventoryItem.TX, tx.getTransactionHash(), -1), serializedTx, selectReceivers(exclude));
+			return;
+		}
+		for (Participant p : selectReceivers(exclude))
+			NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), serializedTx);
+	}
+
+	private ArrayList<Participant> selectReceivers(String... exclude) {
+		ArrayList<Participant> participants = ChainState.INSTANCE.getAllOtherParticipants();
+		if (!isEnabled())
+			return participants;
+
+		List<String> excluded = Arrays.asList(exclude);
+		participants.removeIf(p -> excluded.contains(p.getName()));
+		synchronized (random) {
+			return selectPeers(participants, GlobalConfig.INSTANCE.GOSSIP_FANOUT, random);
+		}
+	}
+
+	// uniformly random subset of at most fanout candidates
+	public static <T> ArrayList<T> selectPeers(List<T> candidates, int fanout, Random random) {
+		ArrayList<T> peers = new ArrayList<>(candidates);
+		if (peers.size() <= fanout)
+			return peers;
+		// partial Fisher-Yates shuffle of the first fanout positions
+		for (int i = 0; i < fanout; i++)
+			Collections.swap(peers, i, i + random.nextInt(peers.size() - i));
+		return new ArrayList<>(peers.subList(0, fanout));
+	}
+}
@@ -11,4 +11,9 @@ import java.io.PrintWriter;
 
 public interface IncomingMessageHandler {
 	void processMessage(String message, PrintWriter output);
+
+	// peer is the remote address of the connection
+	default void processMessage(String message, PrintWriter output, String peer) {
+		processMessage(message, output);
+	}
 }
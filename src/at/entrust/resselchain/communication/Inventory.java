@@ -0,0 +1,104 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.util.ArrayList;
+
+import at.entrust.resselchain.chain.InventoryItem;
+import at.entrust.resselchain.chain.OutgoingMessageSerializer;
+import at.entrust.resselchain.chain.Participant;
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.LruCache;
+
+/* Announce-then-fetch of blocks and Tx. Instead of the full message a node sends an Inv with the hash,
+ * the receiver answers with a GetData for the items it does not know yet and gets the full message then.
+ * The full message is kept for GetData requests, including its GossipTTL, so the receiver relays it as usual.
+ * An item requested from one peer is not requested from other peers announcing it until
+ * InventoryRequestTimeoutMiliseconds have passed. */
+public enum Inventory {
+	INSTANCE;
+
+	public static final String INV = "Inv";
+	public static final String GET_DATA = "GetData";
+
+	// only recent blocks are requested, blocks are kept apart so Tx do not evict them
+	private static final int OFFERED_BLOCKS = 64;
+
+	private final LruCache<String, String> offeredBlocks = new LruCache<>(OFFERED_BLOCKS);
+	private final LruCache<String, String> offeredTx = new LruCache<>(GlobalConfig.INSTANCE.INVENTORY_CACHE_SIZE);
+	private final LruCache<String, Long> requested = new LruCache<>(GlobalConfig.INSTANCE.INVENTORY_CACHE_SIZE);
+
+	public boolean isEnabled() {
+		return GlobalConfig.INSTANCE.INVENTORY_ANNOUNCEMENTS;
+	}
+
+	// keeps the full message for GetData requests and sends an Inv to the receivers
+	public void announce(InventoryItem item, String message, ArrayList<Participant> receivers) {
+		LruCache<String, String> offered = item.isBlock() ? offeredBlocks : offeredTx;
+		synchronized (offered) {
+			offered.put(Base64Converter.encodeFromByteArray(item.getHash()), message);
+		}
+
+		ArrayList<InventoryItem> items = new ArrayList<>();
+		items.add(item);
+		String inv = new OutgoingMessageSerializer().serializeInventoryToString(INV, items);
+		for (Participant p : receivers) {
+			// Inv for blocks go to the outbox of unavailable peers like full blocks
+			if (item.isBlock())
+				NewClient.INSTANCE.sendBlock(p.getAddress(), p.getPort(), inv);
+			else
+				NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), inv);
+		}
+	}
+
+	// items of an Inv that are neither known nor recently requested from another peer; they are marked as requested
+	public ArrayList<InventoryItem> selectMissing(ArrayList<InventoryItem> items) {
+		ArrayList<InventoryItem> missing = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		for (InventoryItem item : items) {
+			if (Gossip.INSTANCE.isSeen(item.getHash()))
+				continue;
+
+			String id = Base64Converter.encodeFromByteArray(item.getHash());
+			synchronized (requested) {
+				Long requestTime = requested.get(id);
+				if (requestTime != null && now - requestTime < GlobalConfig.INSTANCE.INVENTORY_REQUEST_TIMEOUT_MILISECONDS)
+					continue;
+				requested.put(id, now);
+			}
+			missing.add(item);
+		}
+		return missing;
+	}
+
+	public void request(ArrayList<InventoryItem> items, Participant p) {
+		NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), new OutgoingMessageSerializer().serializeInventoryToString(GET_DATA, items));
+	}
+
+	// sends the requested items that are still kept, others have to be synced by the peer
+	public void serve(ArrayList<InventoryItem> items, Participant p) {
+		for (InventoryItem item : items) {
+			LruCache<String, String> offered = item.isBlock() ? offeredBlocks : offeredTx;
+			String message;
+			synchronized (offered) {
+				message = offered.get(Base64Converter.encodeFromByteArray(item.getHash()));
+			}
+			if (message == null) {
+				Logger.FULL.log("GetData from " + p.getName() + " for unknown " + item.getType());
+				continue;
+			}
+
+			if (item.isBlock())
+				NewClient.INSTANCE.sendBlock(p.getAddress(), p.getPort(), message);
+			else
+				NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), message);
+		}
+	}
+}
@@ -24,21 +24,36 @@ public enum NewClient {
 	private ConcurrentHashMap<String, WorkerThread> workerThreads = new ConcurrentHashMap<>();
 	
 	public void sendMessage(String server, int port, String message) {
+		sendMessage(server, port, message, false);
+	}
+
+	// block messages are kept in the outbox of the peer while it is not connected
+	public void sendBlock(String server, int port, String message) {
+		sendMessage(server, port, message, true);
+	}
+
+	private void sendMessage(String server, int port, String message, boolean isBlock) {
 		String id = server + ":" + port;
 		
-		WorkerThread workerThread = workerThreads.computeIfAbsent(id, (String s) -> new WorkerThread(s));
-		if (!workerThread.isStarted)
-			workerThread.start();
-		
-		workerThread.add(message);
+		while (true) {
+			WorkerThread workerThread = workerThreads.computeIfAbsent(id, (String s) -> new WorkerThread(s));
+			if (!workerThread.isStarted)
+				workerThread.start();
+			
+			if (workerThread.add(message, isBlock))
+				break;
+			// the worker has stopped in the meantime, retry with a new one
+			workerThreads.remove(id, workerThread);
+		}
 		//Logger.FULL.log("Active WorkerThreads: " + workerThreads.size());
 	}
 
 	
-	public void removeWorkerThread(String server, int port) {
+	// only removes the given worker, a new worker for the same peer is kept
+	public void removeWorkerThread(String server, int port, WorkerThread workerThread) {
 		String id = server + ":" + port;
 		Logger.FULL.log("WorkerThread removed for ID " + id);
-		workerThreads.remove(id);
+		workerThreads.remove(id, workerThread);
 	}
 
 	
@@ -60,14 +75,15 @@ public enum NewClient {
 		return count;
 	}
 	
-	public HashMap<String, Integer> getQueueMessages() {
-		HashMap<String, Integer> counts = new HashMap<>();
+	// queue depth, sent and dropped messages and send latency per peer
+	public HashMap<String, WorkerThread.QueueStats> getQueueMessages() {
+		HashMap<String, WorkerThread.QueueStats> stats = new HashMap<>();
 		Iterator<Entry<String, WorkerThread>> it = workerThreads.entrySet().iterator();
 		while(it.hasNext()) {
 			Entry<String, WorkerThread> entry = it.next();
-			counts.put(entry.getKey(), entry.getValue().getNumMessagesInQueue());
+			stats.put(entry.getKey(), entry.getValue().getQueueStats());
 		}
-		return counts;
+		return stats;
 	}
 	
 	public void terminateAllConnections() {
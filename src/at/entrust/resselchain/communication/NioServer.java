@@ -0,0 +1,530 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+
+/* Non-blocking server: a few I/O threads serve all connections with a Selector and one SSLEngine per
+ * connection. Received lines are handed to a pool of worker threads; the lines of one connection are
+ * processed one after another, in the order received, like in the thread per connection server.
+ * Responses written to the PrintWriter of a connection are sent by its I/O thread on flush. */
+public class NioServer implements Runnable {
+	public static final String MODE = "nio";
+
+	private static final String END_OF_STREAM = "EOL";
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	private static final long ACCEPT_RETRY_MILISECONDS = 100;
+
+	private final int port;
+	private final IncomingMessageHandler messageHandler;
+	private final IoLoop[] ioLoops;
+	private final ExecutorService workers;
+	private final ArrayList<Thread> threads = new ArrayList<>();
+	private int nextIoLoop = 0;
+
+	private static Thread serverThread = null;
+	private static NioServer serverInstance = null;
+
+	public static void startServer(int port, IncomingMessageHandler messageHandler) {
+		serverInstance = new NioServer(port, messageHandler);
+		serverThread = new Thread(serverInstance);
+		serverThread.setName("Server");
+		serverThread.start();
+	}
+
+	public static void stopServer() {
+		serverThread.interrupt();
+	}
+
+	public static ArrayList<String> getThreadStates() {
+		ArrayList<String> states = new ArrayList<>();
+		if (serverInstance == null)
+			return states;
+
+		synchronized (serverInstance.threads) {
+			for (Thread t : serverInstance.threads)
+				states.add(t.getState().toString());
+		}
+		return states;
+	}
+
+	NioServer(int port, IncomingMessageHandler messageHandler) {
+		this.port = port;
+		this.messageHandler = messageHandler;
+		this.ioLoops = new IoLoop[Math.max(1, GlobalConfig.INSTANCE.SERVER_IO_THREADS)];
+		this.workers = Executors.newFixedThreadPool(Math.max(1, GlobalConfig.INSTANCE.SERVER_WORKER_THREADS), r -> {
+			Thread t = new Thread(r);
+			t.setName("Server Worker");
+			addThread(t);
+			return t;
+		});
+	}
+
+	private void addThread(Thread t) {
+		synchronized (threads) {
+			threads.add(t);
+		}
+	}
+
+	@Override
+	public void run() {
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.bind(new InetSocketAddress(port));
+			SSLContext sslContext = SSLContext.getDefault();
+
+			for (int i = 0; i < ioLoops.length; i++) {
+				ioLoops[i] = new IoLoop();
+				Thread t = new Thread(ioLoops[i]);
+				t.setName("Server I/O " + i);
+				t.setDaemon(true);
+				addThread(t);
+				t.start();
+			}
+
+			// accepting blocks, the I/O threads never do
+			while (!Thread.currentThread().isInterrupted()) {
+				SocketChannel channel;
+				try {
+					channel = serverChannel.accept(); // wait for connection
+				} catch (ClosedChannelException e) {
+					throw e; // server stopped
+				} catch (IOException e) {
+					// e.g. too many open files, the server keeps accepting
+					Logger.ERR.log("Cannot accept connection: " + e.getMessage());
+					try {
+						Thread.sleep(ACCEPT_RETRY_MILISECONDS);
+					} catch (InterruptedException e2) {
+						break;
+					}
+					continue;
+				}
+
+				try {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+				} catch (IOException e) {
+					// only this connection is affected
+					Logger.ERR.log("Cannot set up connection: " + e.getMessage());
+					try {
+						channel.close();
+					} catch (IOException e2) {
+						e2.printStackTrace();
+					}
+					continue;
+				}
+
+				SSLEngine engine = sslContext.createSSLEngine();
+				engine.setUseClientMode(false);
+				engine.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
+
+				IoLoop ioLoop = ioLoops[nextIoLoop];
+				nextIoLoop = (nextIoLoop + 1) % ioLoops.length;
+				Connection connection = new Connection(channel, engine, ioLoop);
+				ioLoop.execute(connection::register);
+			}
+		} catch (IOException | NoSuchAlgorithmException e) {
+			// accept is interrupted by closing the channel when the server is stopped
+			if (!Thread.currentThread().isInterrupted())
+				e.printStackTrace();
+		} finally {
+			Logger.FULL.log("Closing all connections due to the termination of the server thread");
+			for (IoLoop ioLoop : ioLoops) {
+				if (ioLoop != null)
+					ioLoop.stop();
+			}
+			workers.shutdownNow();
+		}
+	}
+
+	private static ByteBuffer enlarge(ByteBuffer buffer, int additionalBytes) {
+		// buffer is in write mode
+		ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() + additionalBytes);
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+	/* One selector thread. Other threads must only change connections through execute. */
+	private static class IoLoop implements Runnable {
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private volatile boolean stopped = false;
+
+		IoLoop() throws IOException {
+			selector = Selector.open();
+		}
+
+		void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		void stop() {
+			stopped = true;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!stopped) {
+					selector.select();
+
+					Runnable task;
+					while ((task = tasks.poll()) != null)
+						task.run();
+
+					for (SelectionKey key : selector.selectedKeys()) {
+						Connection connection = (Connection) key.attachment();
+						if (key.isValid() && key.isReadable())
+							connection.read();
+						if (key.isValid() && key.isWritable())
+							connection.flush();
+					}
+					selector.selectedKeys().clear();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				for (SelectionKey key : selector.keys())
+					((Connection) key.attachment()).close();
+				try {
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private class Connection {
+		private final SocketChannel channel;
+		private final SSLEngine engine;
+		private final IoLoop ioLoop;
+		private final String peer;
+		private SelectionKey key;
+
+		// buffers are only used by the I/O thread
+		private ByteBuffer netIn;
+		private ByteBuffer netOut;
+		private ByteBuffer appIn;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		private final ConcurrentLinkedQueue<String> inbound = new ConcurrentLinkedQueue<>();
+		private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean processing = new AtomicBoolean(false);
+		private final AtomicInteger queued = new AtomicInteger(); // size of inbound
+		private final PrintWriter output = new PrintWriter(new ConnectionWriter());
+
+		private boolean inputClosed = false;
+		private volatile boolean closeRequested = false;
+		private volatile boolean closed = false;
+
+		Connection(SocketChannel channel, SSLEngine engine, IoLoop ioLoop) {
+			this.channel = channel;
+			this.engine = engine;
+			this.ioLoop = ioLoop;
+			this.peer = channel.socket().getInetAddress().getHostAddress();
+			int packetSize = engine.getSession().getPacketBufferSize();
+			netIn = ByteBuffer.allocate(packetSize);
+			netOut = ByteBuffer.allocate(packetSize);
+			appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+		}
+
+		void register() {
+			try {
+				key = channel.register(ioLoop.selector, SelectionKey.OP_READ, this);
+				engine.beginHandshake();
+			} catch (IOException e) {
+				Logger.ERR.log("Cannot register connection: " + e.getMessage());
+				close();
+			}
+		}
+
+		void read() {
+			try {
+				int bytes = channel.read(netIn);
+				if (bytes < 0) {
+					endOfStream();
+					return;
+				}
+				unwrap();
+				flush();
+			} catch (IOException e) {
+				// remove connection (also in case of a TLS error)
+				Logger.FULL.log("Closing connection due to: " + e.getMessage());
+				close();
+			}
+		}
+
+		private void unwrap() throws IOException {
+			netIn.flip();
+			try {
+				while (!closed) {
+					HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+					if (handshakeStatus == HandshakeStatus.NEED_TASK) {
+						runDelegatedTasks();
+						continue;
+					}
+					if (handshakeStatus == HandshakeStatus.NEED_WRAP) {
+						flush();
+						if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP)
+							return; // wait until pending handshake data is written
+						continue;
+					}
+					if (!netIn.hasRemaining())
+						return;
+
+					SSLEngineResult result = engine.unwrap(netIn, appIn);
+					switch (result.getStatus()) {
+						case BUFFER_OVERFLOW:
+							appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+							continue;
+						case BUFFER_UNDERFLOW:
+							return; // incomplete TLS record, wait for more data
+						case CLOSED:
+							endOfStream();
+							return;
+						default:
+							break;
+					}
+					extractLines();
+					if (result.bytesConsumed() == 0 && result.bytesProduced() == 0 && engine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
+						return;
+				}
+			} finally {
+				netIn.compact();
+				if (!netIn.hasRemaining()) // a single record does not fit
+					netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+			}
+		}
+
+		private void runDelegatedTasks() {
+			Runnable task;
+			while ((task = engine.getDelegatedTask()) != null)
+				task.run();
+		}
+
+		// splits the received plain text into newline delimited messages
+		private void extractLines() {
+			appIn.flip();
+			byte[] bytes = appIn.array();
+			int start = appIn.position();
+			for (int i = appIn.position(); i < appIn.limit(); i++) {
+				if (bytes[i] != '\n')
+					continue;
+				if (!appendToLine(bytes, start, i - start))
+					return;
+				start = i + 1;
+
+				String message = new String(line.toByteArray(), StandardCharsets.UTF_8);
+				line.reset();
+				if (message.endsWith("\r"))
+					message = message.substring(0, message.length() - 1);
+				received(message);
+			}
+			if (appendToLine(bytes, start, appIn.limit() - start))
+				appIn.clear();
+		}
+
+		// closes the connection if the line gets longer than ServerMaxLineLength
+		private boolean appendToLine(byte[] bytes, int offset, int length) {
+			int maxLength = GlobalConfig.INSTANCE.SERVER_MAX_LINE_LENGTH;
+			if (maxLength > 0 && line.size() + length > maxLength) {
+				Logger.ERR.log("Closing connection from " + peer + ": message longer than " + maxLength + " bytes");
+				line.reset();
+				appIn.clear();
+				close();
+				return false;
+			}
+			line.write(bytes, offset, length);
+			return true;
+		}
+
+		private void endOfStream() {
+			inputClosed = true;
+			received(END_OF_STREAM);
+			updateInterest();
+		}
+
+		private void received(String message) {
+			if (inputClosed && message != END_OF_STREAM)
+				return;
+			inbound.add(message);
+			queued.incrementAndGet(); // reading stops at the capacity, see updateInterest
+			if (processing.compareAndSet(false, true))
+				workers.execute(this::processMessages);
+		}
+
+		// runs on a worker thread, at most one per connection at a time
+		private void processMessages() {
+			String message;
+			while ((message = inbound.poll()) != null) {
+				// resume reading once the worker falls below the capacity
+				if (queued.decrementAndGet() == GlobalConfig.INSTANCE.SERVER_INBOUND_QUEUE_CAPACITY - 1)
+					ioLoop.execute(this::updateInterest);
+				if (closeRequested)
+					continue;
+				if (message.equals(END_OF_STREAM)) {
+					requestClose();
+					continue;
+				}
+				try {
+					messageHandler.processMessage(message, output, peer);
+				} catch (Exception e) {
+					// close connection, as in the thread per connection server
+					e.printStackTrace();
+					requestClose();
+				}
+			}
+			processing.set(false);
+			if (!inbound.isEmpty() && processing.compareAndSet(false, true))
+				workers.execute(this::processMessages);
+		}
+
+		private void requestClose() {
+			closeRequested = true;
+			ioLoop.execute(this::flush);
+		}
+
+		private void send(ByteBuffer data) {
+			if (closed)
+				return;
+			outbound.add(data);
+			ioLoop.execute(this::flush);
+		}
+
+		// wraps pending handshake and application data and writes as much as the socket accepts
+		void flush() {
+			if (closed)
+				return;
+			try {
+				while (true) {
+					if (netOut.position() > 0) {
+						netOut.flip();
+						channel.write(netOut);
+						netOut.compact();
+						if (netOut.position() > 0)
+							break; // socket buffer is full, continue when writable
+					}
+
+					HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+					ByteBuffer data;
+					if (handshakeStatus == HandshakeStatus.NEED_WRAP)
+						data = EMPTY;
+					else if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING && !outbound.isEmpty())
+						data = outbound.peek();
+					else
+						break;
+
+					SSLEngineResult result = engine.wrap(data, netOut);
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+						continue;
+					}
+					runDelegatedTasks();
+					if (data != EMPTY && !data.hasRemaining())
+						outbound.poll();
+					if (result.bytesConsumed() == 0 && result.bytesProduced() == 0)
+						break;
+				}
+			} catch (IOException e) {
+				Logger.FULL.log("Closing connection due to: " + e.getMessage());
+				close();
+				return;
+			}
+
+			if (closeRequested && outbound.isEmpty() && netOut.position() == 0)
+				close();
+			else
+				updateInterest();
+		}
+
+		private void updateInterest() {
+			if (key == null || !key.isValid())
+				return;
+			int ops = 0;
+			// a client sending faster than its messages are processed is slowed down by TCP flow control
+			int capacity = GlobalConfig.INSTANCE.SERVER_INBOUND_QUEUE_CAPACITY;
+			if (!inputClosed && (capacity <= 0 || queued.get() < capacity))
+				ops |= SelectionKey.OP_READ;
+			if (netOut.position() > 0)
+				ops |= SelectionKey.OP_WRITE;
+			key.interestOps(ops);
+		}
+
+		void close() {
+			if (closed)
+				return;
+			closed = true;
+			inbound.clear();
+			outbound.clear();
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/* Collects the output of the message handler, every flush sends one chunk. */
+		private class ConnectionWriter extends Writer {
+			private final StringBuilder pending = new StringBuilder();
+
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				synchronized (lock) {
+					pending.append(cbuf, off, len);
+				}
+			}
+
+			@Override
+			public void flush() {
+				String data;
+				synchronized (lock) {
+					if (pending.length() == 0)
+						return;
+					data = pending.toString();
+					pending.setLength(0);
+				}
+				send(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+			}
+
+			@Override
+			public void close() {
+				flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+
+/* Block messages for one peer that is not connected, one file per message in <PeerOutboxDirectory>/<server>_<port>.
+ * They are replayed once the WorkerThread has reconnected, so the peer does not have to sync after a short outage.
+ * Messages older than PeerOutboxTTLSeconds are discarded, the peer has to sync then anyway. */
+public class PeerOutbox {
+	private static final String SUFFIX = ".msg";
+
+	private final File directory;
+	private final AtomicLong sequence = new AtomicLong();
+
+	public PeerOutbox(String server, int port) {
+		directory = new File(GlobalConfig.INSTANCE.PEER_OUTBOX_DIRECTORY, server.replaceAll("[^A-Za-z0-9.-]", "_") + "_" + port);
+	}
+
+	public void store(String message) {
+		directory.mkdirs();
+		String name = System.currentTimeMillis() + "-" + sequence.getAndIncrement();
+		File tmp = new File(directory, name + ".tmp");
+		try {
+			// rename, so an incomplete file is never replayed
+			Files.write(tmp.toPath(), message.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp.toPath(), new File(directory, name + SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Logger.ERR.log("Cannot store message in outbox " + directory + ": " + e.getMessage());
+		}
+	}
+
+	// messages not older than the TTL, oldest first; expired messages are deleted
+	public ArrayList<File> getPendingFiles() {
+		ArrayList<File> files = new ArrayList<>();
+		File[] all = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (all == null)
+			return files;
+
+		long oldest = System.currentTimeMillis() - GlobalConfig.INSTANCE.PEER_OUTBOX_TTL_SECONDS * 1000;
+		for (File f : all) {
+			if (getTimestamp(f) < oldest)
+				delete(f);
+			else
+				files.add(f);
+		}
+		files.sort(Comparator.comparingLong(PeerOutbox::getTimestamp).thenComparingLong(PeerOutbox::getSequence));
+		return files;
+	}
+
+	public String read(File f) throws IOException {
+		return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+	}
+
+	public void delete(File f) {
+		if (!f.delete())
+			Logger.ERR.log("Cannot delete " + f + " from outbox");
+	}
+
+	// file names are <timestamp>-<sequence>.msg
+	private static long getTimestamp(File f) {
+		try {
+			return Long.parseLong(f.getName().substring(0, f.getName().indexOf('-')));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return 0; // unknown file, treated as expired
+		}
+	}
+
+	private static long getSequence(File f) {
+		try {
+			return Long.parseLong(f.getName().substring(f.getName().indexOf('-') + 1, f.getName().length() - SUFFIX.length()));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return 0;
+		}
+	}
+}
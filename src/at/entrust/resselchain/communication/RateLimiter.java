@@ -0,0 +1,140 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.communication;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.utils.LruCache;
+
+/* Limits for incoming messages. Every peer has a token bucket per message class (Tx, blocks, other messages),
+ * refilled with the configured rate and holding up to RateLimitBurstSeconds of messages; a rate of 0 disables
+ * the limit. At most ServerMaxInFlightMessages messages are processed at the same time.
+ * Messages that are answered on the connection get a Busy response if a limit is exceeded, so the client can retry.
+ * Other messages (e.g. Tx and blocks from peers) are dropped by the rate limit and wait for the in-flight limit,
+ * which slows down the sender through TCP flow control. */
+public enum RateLimiter {
+	INSTANCE;
+
+	public static final String BUSY = "Busy";
+
+	// waiting time in a Busy response if the in-flight limit is reached
+	public static final long IN_FLIGHT_RETRY_MILISECONDS = 100;
+	private static final int MAX_BUCKETS = 10000;
+
+	private static final HashSet<String> TX_TYPES = new HashSet<>(Arrays.asList("Tx", "UtilityTx", "ExternalTx", "ExternalUtilityTx"));
+	private static final HashSet<String> BLOCK_TYPES = new HashSet<>(Arrays.asList("Block", "CompactBlock", "BlockTx"));
+	private static final HashSet<String> ANSWERED_TYPES = new HashSet<>(Arrays.asList("Status", "BlockList", "Request", "GetAmount", "GetMerkleProof", "ExternalTx", "ExternalUtilityTx"));
+
+	private final LruCache<String, TokenBucket> buckets = new LruCache<>(MAX_BUCKETS);
+	private final Semaphore inFlight = (GlobalConfig.INSTANCE.SERVER_MAX_IN_FLIGHT_MESSAGES > 0) ? new Semaphore(GlobalConfig.INSTANCE.SERVER_MAX_IN_FLIGHT_MESSAGES) : null;
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong busy = new AtomicLong();
+
+	private static class TokenBucket {
+		private final double rate; // tokens per ms
+		private final double capacity;
+		private double tokens;
+		private long lastRefill = System.currentTimeMillis();
+
+		TokenBucket(double ratePerSecond) {
+			rate = ratePerSecond / 1000;
+			capacity = Math.max(1, ratePerSecond * GlobalConfig.INSTANCE.RATE_LIMIT_BURST_SECONDS);
+			tokens = capacity;
+		}
+
+		// 0 if a token was taken, otherwise the ms until the next token
+		synchronized long tryAcquire() {
+			long now = System.currentTimeMillis();
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+			lastRefill = now;
+			if (tokens >= 1) {
+				tokens--;
+				return 0;
+			}
+			return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+		}
+	}
+
+	public static boolean isAnswered(String type) {
+		return ANSWERED_TYPES.contains(type);
+	}
+
+	private static double getRate(String type) {
+		if (TX_TYPES.contains(type))
+			return GlobalConfig.INSTANCE.RATE_LIMIT_TX_PER_SECOND;
+		if (BLOCK_TYPES.contains(type))
+			return GlobalConfig.INSTANCE.RATE_LIMIT_BLOCKS_PER_SECOND;
+		return GlobalConfig.INSTANCE.RATE_LIMIT_REQUESTS_PER_SECOND;
+	}
+
+	private static String getMessageClass(String type) {
+		if (TX_TYPES.contains(type))
+			return "Tx";
+		if (BLOCK_TYPES.contains(type))
+			return "Block";
+		return "Other";
+	}
+
+	// 0 if the message may be processed, otherwise the ms until the peer may send it again
+	public long acquire(String peer, String type) {
+		double rate = getRate(type);
+		if (rate <= 0)
+			return 0;
+
+		String key = peer + "/" + getMessageClass(type);
+		TokenBucket bucket;
+		synchronized (buckets) {
+			bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new TokenBucket(rate);
+				buckets.put(key, bucket);
+			}
+		}
+		long retryAfter = bucket.tryAcquire();
+		if (retryAfter > 0)
+			rejected.incrementAndGet();
+		return retryAfter;
+	}
+
+	// answered messages do not wait, the client gets a Busy response instead
+	public boolean enter(boolean wait) {
+		if (inFlight == null)
+			return true;
+		if (wait) {
+			inFlight.acquireUninterruptibly();
+			return true;
+		}
+		if (inFlight.tryAcquire())
+			return true;
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	public void exit() {
+		if (inFlight != null)
+			inFlight.release();
+	}
+
+	public String getBusyMessage(long retryAfter) {
+		busy.incrementAndGet();
+		return "<?xml version=\"1.0\"?><" + BUSY + "><RetryAfterMiliseconds>" + retryAfter + "</RetryAfterMiliseconds></" + BUSY + ">";
+	}
+
+	// messages rejected by a limit, including those answered with Busy
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getBusyCount() {
+		return busy.get();
+	}
+}
@@ -13,6 +13,8 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
@@ -21,14 +23,19 @@ import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.logging.Logger;
 
 public class Server implements Runnable {
-	private ArrayList<ClientThread> clientThreads = new ArrayList<ClientThread>();;
+	private List<ClientThread> clientThreads = new CopyOnWriteArrayList<ClientThread>();
 	private int port;
 	private IncomingMessageHandler messageHandler;
 	
 	private static Thread serverThread = null;
 	private static Server serverInstance = null;
 	
+	// starts the thread per connection server unless ServerMode is nio
 	public static void startServer(int port, IncomingMessageHandler messageHandler) {
+		if (GlobalConfig.INSTANCE.SERVER_MODE.equals(NioServer.MODE)) {
+			NioServer.startServer(port, messageHandler);
+			return;
+		}
 		serverInstance = new Server(port, messageHandler);
 		serverThread = new Thread(serverInstance);
 		serverThread.setName("Server");
@@ -36,6 +43,10 @@ public class Server implements Runnable {
 	}
 	
 	public static void stopServer() {
+		if (GlobalConfig.INSTANCE.SERVER_MODE.equals(NioServer.MODE)) {
+			NioServer.stopServer();
+			return;
+		}
 		serverThread.interrupt();
 	}
 
@@ -45,12 +56,14 @@ public class Server implements Runnable {
 	}
 	
 	public static ArrayList<String> getThreadStates() {
+		if (GlobalConfig.INSTANCE.SERVER_MODE.equals(NioServer.MODE))
+			return NioServer.getThreadStates();
 		ArrayList<String> states = new ArrayList<>();
 		if (serverInstance == null)
 			return states;
 		
 		for (ClientThread t : serverInstance.clientThreads) {
-			states.add(t.getState().toString());
+			states.add(t.thread.getState().toString());
 		}
 		return states;
 	}
@@ -67,7 +80,7 @@ public class Server implements Runnable {
 					Logger.FULL.log("Interrupting all client threads due to the termination of the server thread");
 					// close all client threads and exit
 					for(ClientThread t : clientThreads)
-						t.interrupt();
+						t.thread.interrupt();
 					serverSocket.close();
 					return;
 				}
@@ -75,9 +88,9 @@ public class Server implements Runnable {
 				SSLSocket socket = (SSLSocket) serverSocket.accept(); // wait for connection
 				//socket.setSoTimeout(GlobalConfig.INSTANCE.SOCKET_READ_TIMEOUT_MILISECONDS);
 				ClientThread t = new ClientThread(socket, messageHandler);
-				t.setName("Server Thread "+ socket.getRemoteSocketAddress());
+				t.thread = ConnectionThreads.INSTANCE.newThread(t, "Server Thread "+ socket.getRemoteSocketAddress());
 				clientThreads.add(t);
-				t.start();
+				t.thread.start();
 			}
 			
 		} catch (IOException e) {
@@ -85,7 +98,9 @@ public class Server implements Runnable {
 		}
 	}
 	
-	class ClientThread extends Thread {
+	// runs on a thread of ConnectionThreads, i.e. on a virtual thread in virtual mode
+	class ClientThread implements Runnable {
+		Thread thread;
 		Socket socket;
 		IncomingMessageHandler messageHandler;
 		BufferedReader input;
@@ -132,22 +147,17 @@ public class Server implements Runnable {
 					String message = input.readLine();
 					//Logger.FULL.log("DEBUG/SERVER: " +  ((message == null) ? "null" : message));
 					if (message != null && !message.equals("EOL")) {
-						messageHandler.processMessage(message, output);
+						messageHandler.processMessage(message, output, socket.getInetAddress().getHostAddress());
 					} else {
 						//Logger.FULL.log("Interrupting client thread due to possible EOL command");
 						//TODO: spams the output because of status request ^
 						//Thread.currentThread().interrupt();
 						//System.gc();
 						clientThreads.remove(this);
+						socket.close(); // release the connection, many clients may connect over time
 						return;
 					}
 					
-					try {
-						Thread.sleep(GlobalConfig.INSTANCE.COMMUNICATION_THREAD_SLEEP_MILISECONDS);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-					
 				} catch (Exception e) {
 					// remove from client list (also in case of read timeout)
 					e.printStackTrace();
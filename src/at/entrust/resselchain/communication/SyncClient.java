@@ -15,11 +15,12 @@ import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.utils.Base64Converter;
 import nu.xom.*;
 
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import java.io.*;
-import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SyncClient {
 
@@ -92,7 +93,25 @@ public class SyncClient {
 
 	}
 
+	// runs the request on a thread of ConnectionThreads (a virtual thread in virtual mode) and waits
+	// at most for connecting and reading the response, i.e. twice the timeout
 	private static Element request(Participant p, Element root, int timeout) {
+		Future<Element> response = ConnectionThreads.INSTANCE.getExecutor().submit(() -> sendRequest(p, root, timeout));
+		try {
+			return response.get(2L * timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			Logger.ERR.log("Timeout on request for syncing with " + p.getName());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Logger.ERR.log("Error on request for syncing with " + p.getName() + ": " + e.getCause());
+		} finally {
+			response.cancel(true);
+		}
+		return null;
+	}
+
+	private static Element sendRequest(Participant p, Element root, int timeout) {
 		Document doc = new Document(root);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		Element returnValue = null;
@@ -112,28 +131,18 @@ public class SyncClient {
 			 * System.exit(1); } finally { if (client != null)
 			 * client.terminateConnection(); }
 			 */
-			SSLSocket socket = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
-			socket.connect(new InetSocketAddress(p.getAddress(), p.getPort()), timeout);
-			socket.setEnabledCipherSuites(new String[] { GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE });
-			socket.setSoTimeout(timeout);
-			
-
-			PrintWriter output = new PrintWriter(socket.getOutputStream());
-			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-			output.println(statusRequest);
-			output.flush();
-			String response = input.readLine();
+			// connection is kept open for the next request to this participant
+			String response = ConnectionPool.INSTANCE.request(p.getAddress(), p.getPort(), statusRequest, timeout);
 			try {
 				returnValue = parseXML(response);
+				if (returnValue.getLocalName().equals(RateLimiter.BUSY)) {
+					Logger.FULL.log(p.getName() + " is busy, request rejected");
+					returnValue = null;
+				}
 			} catch (ParsingException e) {
 				Logger.FULL.log("XML parsing error in response from " +  p.getName());
 				returnValue = null;
 			}
-			// output.println("EOL");
-			output.close();
-			input.close();
-			socket.close();
 		} catch (IOException e) {
 			Logger.ERR.log("Error on request for syncing with "+ p.getName() +  ": " + e.getMessage());
 		}
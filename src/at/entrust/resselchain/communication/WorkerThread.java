@@ -7,11 +7,18 @@
 
 package at.entrust.resselchain.communication;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.net.SocketTimeoutException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -19,15 +26,82 @@ import javax.net.ssl.SSLSocketFactory;
 import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.logging.Logger;
 
-public class WorkerThread extends Thread {
-	
-	ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+/* Sends the queued messages to one peer over a single connection. Runs on a thread of ConnectionThreads,
+ * i.e. on a virtual thread in virtual mode, and waits on the queue while there is nothing to send.
+ * All messages queued in the meantime are written as one batch with a single flush. */
+public class WorkerThread implements Runnable {
+	// what happens to a message added to a full queue
+	public static final String DROP_OLDEST_POLICY = "drop-oldest";
+	public static final String DROP_NEWEST_POLICY = "drop-newest";
+	public static final String BLOCK_POLICY = "block";
+
+	private static final int MAX_BATCH_SIZE = 256;
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	private static class QueuedMessage {
+		final String message;
+		final long enqueueTime = System.nanoTime();
+
+		QueuedMessage(String message) {
+			this.message = message;
+		}
+	}
+
+	/* Snapshot of the queue of one peer, latencies are measured from adding a message until it has been flushed. */
+	public static class QueueStats {
+		private final int depth;
+		private final long sent;
+		private final long dropped;
+		private final long averageLatencyMicroseconds;
+		private final long maxLatencyMicroseconds;
+
+		QueueStats(int depth, long sent, long dropped, long averageLatencyMicroseconds, long maxLatencyMicroseconds) {
+			this.depth = depth;
+			this.sent = sent;
+			this.dropped = dropped;
+			this.averageLatencyMicroseconds = averageLatencyMicroseconds;
+			this.maxLatencyMicroseconds = maxLatencyMicroseconds;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getSent() {
+			return sent;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+
+		public long getAverageLatencyMicroseconds() {
+			return averageLatencyMicroseconds;
+		}
+
+		public long getMaxLatencyMicroseconds() {
+			return maxLatencyMicroseconds;
+		}
+	}
+
+	LinkedBlockingQueue<QueuedMessage> queue = new LinkedBlockingQueue<>(Math.max(1, GlobalConfig.INSTANCE.PEER_QUEUE_CAPACITY));
 	
 	private PrintWriter output;
 	private SSLSocket socket;
+	private Thread thread;
 	String server;
 	int port;
-	boolean isStarted = false;
+	volatile boolean isStarted = false;
+	private volatile boolean isStopped = false; // removed from NewClient, add() does not queue anymore
+	private final AtomicInteger pending = new AtomicInteger(); // messages queued or not flushed yet
+	private volatile boolean isConnected = false;
+	private PeerOutbox outbox = null;
+	private final Random random = new Random();
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder totalLatency = new LongAdder();
+	private final AtomicLong maxLatency = new AtomicLong();
 
 		
 	public void sendMessage(String message) {
@@ -37,6 +111,8 @@ public class WorkerThread extends Thread {
 	}
 	
 	public void terminateConnection() {
+		if (output == null)
+			return; // not connected yet
 		output.write("EOL\n");
 		output.flush();
 		
@@ -45,62 +121,158 @@ public class WorkerThread extends Thread {
 		output.close();
 	}
 	
-	@Override
 	public synchronized void start() {
-		super.start();
+		if (isStarted)
+			return;
+		thread = ConnectionThreads.INSTANCE.newThread(this, "Worker Thread " + server + ":" + port);
+		thread.start();
 		isStarted = true;
 	}
+
+	public synchronized void interrupt() {
+		if (thread != null)
+			thread.interrupt();
+	}
 	
 	public void run() {
-			
+		ArrayList<QueuedMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		long reconnectDelay = GlobalConfig.INSTANCE.RECONNECT_INITIAL_DELAY_MILISECONDS;
+		boolean wasConnected = false;
+		int failedAttempts = 0;
+		while(true) {
+			if (!connect()) {
+				if (failedAttempts == 0)
+					System.out.println("Worker Thread (" + this.server + ":" + this.port + "): Node " + server + ":" + port + " unavailable.");
+				failedAttempts++;
+				if (GlobalConfig.INSTANCE.RECONNECT_MAX_ATTEMPTS > 0 && failedAttempts >= GlobalConfig.INSTANCE.RECONNECT_MAX_ATTEMPTS) {
+					giveUp(batch);
+					return;
+				}
+
+				// queued messages are kept, retry with exponential backoff (and jitter, so peers do not reconnect at once)
+				try {
+					Thread.sleep(reconnectDelay + random.nextInt((int) Math.max(1, reconnectDelay / 4)));
+				} catch (InterruptedException e) {
+					stop(batch);
+					return;
+				}
+				reconnectDelay = Math.min(2 * reconnectDelay, GlobalConfig.INSTANCE.RECONNECT_MAX_DELAY_MILISECONDS);
+				continue;
+			}
+
+			Logger.FULL.log((wasConnected ? "Reconnected WorkerThread for ID " : "Starting new WorkerThread for ID ") + server + ":" + port);
+			wasConnected = true;
+			failedAttempts = 0;
+			reconnectDelay = GlobalConfig.INSTANCE.RECONNECT_INITIAL_DELAY_MILISECONDS;
+			isConnected = true;
+
+			if (replayOutbox() && !sendQueuedMessages(batch))
+				return; // terminated
+
+			// this means the socket has been closed, reconnect
+			isConnected = false;
+			Logger.ERR.log("Worker Thread (" + this.server + ":" + this.port + "): Connection closed, reconnecting.");
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// drops the queued messages, block messages in the outbox are kept for the next worker
+	private void giveUp(ArrayList<QueuedMessage> batch) {
+		int count = stop(batch);
+		Logger.ERR.log("Worker Thread (" + this.server + ":" + this.port + "): Node unavailable after " + GlobalConfig.INSTANCE.RECONNECT_MAX_ATTEMPTS + " attempts, dropped " + count + " messages.");
+	}
+
+	// stops adding to the queue, removes the worker and drops the messages not sent, returns their number
+	// a message added concurrently is either drained here or taken back by add() and sent by a new worker
+	private int stop(ArrayList<QueuedMessage> batch) {
+		isStopped = true;
+		NewClient.INSTANCE.removeWorkerThread(server, port, this);
+		queue.drainTo(batch);
+		int count = batch.size();
+		pending.addAndGet(-count);
+		dropped.add(count);
+		batch.clear();
+		return count;
+	}
+
+	private boolean connect() {
 		try {
 			socket = (SSLSocket)SSLSocketFactory.getDefault().createSocket(server, port);
 			socket.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
 			socket.startHandshake();
 			
-			output = new PrintWriter(socket.getOutputStream());
-			Logger.FULL.log("Starting new WorkerThread for ID " + server + ":" + port);
+			output = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE)));
+			return true;
 		} catch (IOException e) {
-			System.out.println("Worker Thread (" + this.server + ":" + this.port + "): Node " + server + ":" + port + " unavailable.");
-			NewClient.INSTANCE.removeWorkerThread(server, port);
-			return;
+			return false;
 		}
+	}
 
-		while(true) {
+	// sends the block messages stored while the peer was not connected, returns false if the connection failed
+	private boolean replayOutbox() {
+		if (outbox == null)
+			return true;
 
+		ArrayList<File> files = outbox.getPendingFiles();
+		if (files.isEmpty())
+			return true;
+		for (File f : files) {
 			try {
-				if (Thread.currentThread().isInterrupted()) {
-					terminateConnection();
-					socket.close();
-					NewClient.INSTANCE.removeWorkerThread(server, port);
-					return;
-				}
-
-				if (!queue.isEmpty()) {
-					String message = queue.poll();
-					socket.setSoTimeout(10); // setTimeout if connection is closed --> procece error
-					if (message != null && output != null)
-						sendMessage(message);
-				}
-			} catch (IOException | NullPointerException e) {
+				output.write(outbox.read(f));
+				output.write("\n"); // make sure to terminate
+			} catch (IOException e) {
 				e.printStackTrace();
-				
-				// this means the socket has been closed,
-				// exit thread and delete object
-				NewClient.INSTANCE.removeWorkerThread(server, port);
-				return;
 			}
+		}
+		output.flush();
+		if (output.checkError())
+			return false; // files are kept and replayed after reconnecting
 
-			if (queue.isEmpty()) {
-				try {
-					Thread.sleep(GlobalConfig.INSTANCE.COMMUNICATION_THREAD_SLEEP_MILISECONDS);
+		for (File f : files)
+			outbox.delete(f);
+		Logger.FULL.log("Worker Thread (" + this.server + ":" + this.port + "): Replayed " + files.size() + " block messages from outbox");
+		return true;
+	}
 
+	// returns true if the connection failed and false if the thread has been terminated
+	// the messages of a failed batch are kept in the batch and sent again after reconnecting
+	private boolean sendQueuedMessages(ArrayList<QueuedMessage> batch) {
+		while(true) {
+			if (batch.isEmpty()) {
+				try {
+					batch.add(queue.take()); // wait for the next message
 				} catch (InterruptedException e) {
-					e.printStackTrace();
+					try {
+						terminateConnection();
+						socket.close();
+					} catch (IOException e2) {
+						e2.printStackTrace();
+					}
+					stop(batch);
+					return false;
 				}
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
 			}
-		}
 
+			for (QueuedMessage m : batch) {
+				output.write(m.message);
+				output.write("\n"); // make sure to terminate
+			}
+			output.flush();
+			if (output.checkError())
+				return true;
+
+			long now = System.nanoTime();
+			for (QueuedMessage m : batch)
+				recordLatency(now - m.enqueueTime);
+			sent.add(batch.size());
+			pending.addAndGet(-batch.size());
+			batch.clear();
+		}
 	}
 	
 	public WorkerThread(String id) {
@@ -108,22 +280,87 @@ public class WorkerThread extends Thread {
 	}
 	
 	public WorkerThread(String server, int port) {
-		super();
 		this.server = server;
 		this.port = port;
-		this.setName("Worker Thread " + server + ":" + port);
+		if (GlobalConfig.INSTANCE.PEER_OUTBOX_ENABLED)
+			outbox = new PeerOutbox(server, port);
 	}
 	
-	public void add(String message) {
-		queue.add(message);
+	public boolean add(String message) {
+		return add(message, false);
+	}
+
+	// block messages are stored in the outbox while the peer is not connected (if enabled)
+	// returns false if the worker has been stopped, the message has to be added to a new worker then
+	public boolean add(String message, boolean isBlock) {
+		if (isStopped)
+			return false;
+		if (isBlock && outbox != null && !isConnected) {
+			outbox.store(message);
+			return true;
+		}
+
+		QueuedMessage m = new QueuedMessage(message);
+		pending.incrementAndGet();
+		offer(m);
+		// stop() sets the flag before draining, a message still in the queue afterwards is not sent by this worker
+		if (isStopped && queue.remove(m)) {
+			pending.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void offer(QueuedMessage m) {
+		if (queue.offer(m))
+			return;
+
+		// queue is full
+		switch (GlobalConfig.INSTANCE.PEER_QUEUE_OVERFLOW_POLICY) {
+			case BLOCK_POLICY:
+				// bounded, the caller (e.g. the miner) must not wait for a peer that is not connected
+				try {
+					if (queue.offer(m, GlobalConfig.INSTANCE.PEER_QUEUE_BLOCK_TIMEOUT_MILISECONDS, TimeUnit.MILLISECONDS))
+						break;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				pending.decrementAndGet();
+				dropped.increment();
+				break;
+			case DROP_NEWEST_POLICY:
+				pending.decrementAndGet();
+				dropped.increment();
+				break;
+			default:
+				while (!queue.offer(m)) {
+					if (queue.poll() != null) {
+						pending.decrementAndGet();
+						dropped.increment();
+					}
+				}
+		}
+	}
+
+	private void recordLatency(long latency) {
+		totalLatency.add(latency);
+		long max = maxLatency.get();
+		while (latency > max && !maxLatency.compareAndSet(max, latency))
+			max = maxLatency.get();
 	}
 	
 	public boolean isQueueEmpty() {
-		return queue.isEmpty();
+		return pending.get() == 0;
 	}
 	
 	public int getNumMessagesInQueue() {
 		return queue.size();
 	}
+
+	public QueueStats getQueueStats() {
+		long sentMessages = sent.sum();
+		long averageLatency = (sentMessages == 0) ? 0 : totalLatency.sum() / sentMessages;
+		return new QueueStats(queue.size(), sentMessages, dropped.sum(), averageLatency / 1000, maxLatency.get() / 1000);
+	}
 	
 }
\ No newline at end of file
@@ -46,6 +46,94 @@ public enum GlobalConfig {
 				SYNC_BLOCK_REQUEST_OFFSET=Long.parseLong(root.getChildElements("SyncBlockRequestOffeset").get(0).getValue());
 				DEBUG=Boolean.valueOf(root.getChildElements("Debug").get(0).getValue());
 
+				// optional properties
+				if (root.getChildElements("TxFilterFalsePositiveRate").size() != 0)
+					TX_FILTER_FALSE_POSITIVE_RATE = Double.parseDouble(root.getChildElements("TxFilterFalsePositiveRate").get(0).getValue());
+				if (root.getChildElements("TxStateBackend").size() != 0)
+					TX_STATE_BACKEND = root.getChildElements("TxStateBackend").get(0).getValue();
+				if (root.getChildElements("TxStateSnapshotInterval").size() != 0)
+					TX_STATE_SNAPSHOT_INTERVAL = Long.parseLong(root.getChildElements("TxStateSnapshotInterval").get(0).getValue());
+				if (root.getChildElements("TxStateLogSync").size() != 0)
+					TX_STATE_LOG_SYNC = Boolean.valueOf(root.getChildElements("TxStateLogSync").get(0).getValue());
+				if (root.getChildElements("ValidationThreads").size() != 0)
+					VALIDATION_THREADS = Integer.parseInt(root.getChildElements("ValidationThreads").get(0).getValue());
+				if (root.getChildElements("AssetExecutionMode").size() != 0)
+					ASSET_EXECUTION_MODE = root.getChildElements("AssetExecutionMode").get(0).getValue();
+				if (root.getChildElements("TimeZone").size() != 0)
+					TIME_ZONE = root.getChildElements("TimeZone").get(0).getValue();
+				if (root.getChildElements("VerifyThreads").size() != 0)
+					VERIFY_THREADS = Integer.parseInt(root.getChildElements("VerifyThreads").get(0).getValue());
+				if (root.getChildElements("SignatureCacheSize").size() != 0)
+					SIGNATURE_CACHE_SIZE = Integer.parseInt(root.getChildElements("SignatureCacheSize").get(0).getValue());
+				if (root.getChildElements("BlockVersion").size() != 0)
+					BLOCK_VERSION = Integer.parseInt(root.getChildElements("BlockVersion").get(0).getValue());
+				if (root.getChildElements("BinaryEncodingActivationHeight").size() != 0)
+					BINARY_ENCODING_ACTIVATION_HEIGHT = Long.parseLong(root.getChildElements("BinaryEncodingActivationHeight").get(0).getValue());
+				if (root.getChildElements("TxVersion").size() != 0)
+					TX_VERSION = Integer.parseInt(root.getChildElements("TxVersion").get(0).getValue());
+				if (root.getChildElements("ServerMode").size() != 0)
+					SERVER_MODE = root.getChildElements("ServerMode").get(0).getValue();
+				if (root.getChildElements("ServerIOThreads").size() != 0)
+					SERVER_IO_THREADS = Integer.parseInt(root.getChildElements("ServerIOThreads").get(0).getValue());
+				if (root.getChildElements("ServerWorkerThreads").size() != 0)
+					SERVER_WORKER_THREADS = Integer.parseInt(root.getChildElements("ServerWorkerThreads").get(0).getValue());
+				if (root.getChildElements("ServerMaxLineLength").size() != 0)
+					SERVER_MAX_LINE_LENGTH = Integer.parseInt(root.getChildElements("ServerMaxLineLength").get(0).getValue());
+				if (root.getChildElements("ConnectionThreadMode").size() != 0)
+					CONNECTION_THREAD_MODE = root.getChildElements("ConnectionThreadMode").get(0).getValue();
+				if (root.getChildElements("PeerQueueCapacity").size() != 0)
+					PEER_QUEUE_CAPACITY = Integer.parseInt(root.getChildElements("PeerQueueCapacity").get(0).getValue());
+				if (root.getChildElements("PeerQueueOverflowPolicy").size() != 0)
+					PEER_QUEUE_OVERFLOW_POLICY = root.getChildElements("PeerQueueOverflowPolicy").get(0).getValue();
+				if (root.getChildElements("PeerQueueBlockTimeoutMiliseconds").size() != 0)
+					PEER_QUEUE_BLOCK_TIMEOUT_MILISECONDS = Long.parseLong(root.getChildElements("PeerQueueBlockTimeoutMiliseconds").get(0).getValue());
+				if (root.getChildElements("ReconnectInitialDelayMiliseconds").size() != 0)
+					RECONNECT_INITIAL_DELAY_MILISECONDS = Long.parseLong(root.getChildElements("ReconnectInitialDelayMiliseconds").get(0).getValue());
+				if (root.getChildElements("ReconnectMaxDelayMiliseconds").size() != 0)
+					RECONNECT_MAX_DELAY_MILISECONDS = Long.parseLong(root.getChildElements("ReconnectMaxDelayMiliseconds").get(0).getValue());
+				if (root.getChildElements("ReconnectMaxAttempts").size() != 0)
+					RECONNECT_MAX_ATTEMPTS = Integer.parseInt(root.getChildElements("ReconnectMaxAttempts").get(0).getValue());
+				if (root.getChildElements("PeerOutboxEnabled").size() != 0)
+					PEER_OUTBOX_ENABLED = Boolean.valueOf(root.getChildElements("PeerOutboxEnabled").get(0).getValue());
+				if (root.getChildElements("PeerOutboxDirectory").size() != 0)
+					PEER_OUTBOX_DIRECTORY = root.getChildElements("PeerOutboxDirectory").get(0).getValue();
+				if (root.getChildElements("PeerOutboxTTLSeconds").size() != 0)
+					PEER_OUTBOX_TTL_SECONDS = Long.parseLong(root.getChildElements("PeerOutboxTTLSeconds").get(0).getValue());
+				if (root.getChildElements("ConnectionPoolMaxIdlePerPeer").size() != 0)
+					CONNECTION_POOL_MAX_IDLE_PER_PEER = Integer.parseInt(root.getChildElements("ConnectionPoolMaxIdlePerPeer").get(0).getValue());
+				if (root.getChildElements("ConnectionPoolIdleTimeoutMiliseconds").size() != 0)
+					CONNECTION_POOL_IDLE_TIMEOUT_MILISECONDS = Long.parseLong(root.getChildElements("ConnectionPoolIdleTimeoutMiliseconds").get(0).getValue());
+				if (root.getChildElements("BroadcastMode").size() != 0)
+					BROADCAST_MODE = root.getChildElements("BroadcastMode").get(0).getValue();
+				if (root.getChildElements("GossipFanout").size() != 0)
+					GOSSIP_FANOUT = Integer.parseInt(root.getChildElements("GossipFanout").get(0).getValue());
+				if (root.getChildElements("GossipTTL").size() != 0)
+					GOSSIP_TTL = Integer.parseInt(root.getChildElements("GossipTTL").get(0).getValue());
+				if (root.getChildElements("GossipSeenCacheSize").size() != 0)
+					GOSSIP_SEEN_CACHE_SIZE = Integer.parseInt(root.getChildElements("GossipSeenCacheSize").get(0).getValue());
+				if (root.getChildElements("InventoryAnnouncements").size() != 0)
+					INVENTORY_ANNOUNCEMENTS = Boolean.valueOf(root.getChildElements("InventoryAnnouncements").get(0).getValue());
+				if (root.getChildElements("InventoryCacheSize").size() != 0)
+					INVENTORY_CACHE_SIZE = Integer.parseInt(root.getChildElements("InventoryCacheSize").get(0).getValue());
+				if (root.getChildElements("InventoryRequestTimeoutMiliseconds").size() != 0)
+					INVENTORY_REQUEST_TIMEOUT_MILISECONDS = Long.parseLong(root.getChildElements("InventoryRequestTimeoutMiliseconds").get(0).getValue());
+				if (root.getChildElements("CompactBlocks").size() != 0)
+					COMPACT_BLOCKS = Boolean.valueOf(root.getChildElements("CompactBlocks").get(0).getValue());
+				if (root.getChildElements("SeenMessageCacheSize").size() != 0)
+					SEEN_MESSAGE_CACHE_SIZE = Integer.parseInt(root.getChildElements("SeenMessageCacheSize").get(0).getValue());
+				if (root.getChildElements("RateLimitTxPerSecond").size() != 0)
+					RATE_LIMIT_TX_PER_SECOND = Double.parseDouble(root.getChildElements("RateLimitTxPerSecond").get(0).getValue());
+				if (root.getChildElements("RateLimitBlocksPerSecond").size() != 0)
+					RATE_LIMIT_BLOCKS_PER_SECOND = Double.parseDouble(root.getChildElements("RateLimitBlocksPerSecond").get(0).getValue());
+				if (root.getChildElements("RateLimitRequestsPerSecond").size() != 0)
+					RATE_LIMIT_REQUESTS_PER_SECOND = Double.parseDouble(root.getChildElements("RateLimitRequestsPerSecond").get(0).getValue());
+				if (root.getChildElements("RateLimitBurstSeconds").size() != 0)
+					RATE_LIMIT_BURST_SECONDS = Double.parseDouble(root.getChildElements("RateLimitBurstSeconds").get(0).getValue());
+				if (root.getChildElements("ServerMaxInFlightMessages").size() != 0)
+					SERVER_MAX_IN_FLIGHT_MESSAGES = Integer.parseInt(root.getChildElements("ServerMaxInFlightMessages").get(0).getValue());
+				if (root.getChildElements("ServerInboundQueueCapacity").size() != 0)
+					SERVER_INBOUND_QUEUE_CAPACITY = Integer.parseInt(root.getChildElements("ServerInboundQueueCapacity").get(0).getValue());
+
 			} else {
 				Logger.FULL.log("No properties.xml file found. Using default properties.");
 			}
@@ -120,5 +208,108 @@ public enum GlobalConfig {
 
 	//Print log to std out
 	public boolean DEBUG = true;
+
+	// False positive rate of the in-memory filter in front of the tx state table
+	public double TX_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+	// Backend for the tx state table: "sqlite" (transactionstates.db) or "memory" (off-heap table with snapshot and log)
+	public String TX_STATE_BACKEND = "sqlite";
+
+	// Number of log records after which the in-memory tx state table writes a new snapshot
+	public long TX_STATE_SNAPSHOT_INTERVAL = 100000;
+
+	// Sync every record of the in-memory tx state log to disk; if false, records are only flushed and may be lost on a power failure
+	public boolean TX_STATE_LOG_SYNC = true;
+
+	// Number of threads validating the Tx of different assets in parallel
+	public int VALIDATION_THREADS = Runtime.getRuntime().availableProcessors();
+
+	// Execution of the Tx of one asset within a block: "sequential" or "precheck" (Tx are checked in parallel, then applied sequentially)
+	public String ASSET_EXECUTION_MODE = "sequential";
+
+	// Time zone of days and quarter-hour slots of balance queries, e.g. "UTC" or "Europe/Vienna"; must be the same on all nodes
+	public String TIME_ZONE = "UTC";
+
+	// Number of threads verifying the Tx signatures of a received block
+	public int VERIFY_THREADS = Runtime.getRuntime().availableProcessors();
+
+	// Number of verified Tx signatures remembered to skip verifying them again in blocks
+	public int SIGNATURE_CACHE_SIZE = 50000;
+
+	// Version of mined blocks: 1 (legacy) or 2 (Merkle root of all Tx in the block hash)
+	// Note: Switch to 2 once all nodes accept version 2 blocks
+	public int BLOCK_VERSION = 1;
+
+	// Block number from which on blocks (version 3) and Tx (version 2) are hashed in the canonical binary encoding
+	// Note: Must be the same on all nodes, the default never activates the binary encoding
+	public long BINARY_ENCODING_ACTIVATION_HEIGHT = Long.MAX_VALUE;
+
+	// Version of Tx created by TxSender and UtilityTxSender: 1 (legacy) or 2 (binary encoding, only accepted after activation)
+	public int TX_VERSION = 1;
+
+	// Server for incoming messages: "nio" (non-blocking, shared threads) or "threads" (one thread per connection)
+	public String SERVER_MODE = "threads";
+
+	// Number of threads of the non-blocking server handling socket I/O and TLS
+	public int SERVER_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+	// Number of threads of the non-blocking server processing received messages
+	public int SERVER_WORKER_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+
+	// Maximum length of a received message in bytes for the non-blocking server, longer messages close the connection (0 = unlimited)
+	public int SERVER_MAX_LINE_LENGTH = 64 * 1024 * 1024;
+
+	// Threads for blocking connections (server in threads mode, WorkerThread, SyncClient): "platform" or "virtual" (Java 21 or later)
+	public String CONNECTION_THREAD_MODE = "platform";
+
+	// Maximum number of messages queued for one peer
+	public int PEER_QUEUE_CAPACITY = 100000;
+
+	// Message added to a full peer queue: "drop-oldest" (discard the oldest queued message), "drop-newest" (discard the new message) or "block" (wait for space)
+	public String PEER_QUEUE_OVERFLOW_POLICY = "drop-oldest";
+	// Maximum wait for space with the "block" policy, the message is dropped afterwards (the queue of an unavailable peer is not drained)
+	public long PEER_QUEUE_BLOCK_TIMEOUT_MILISECONDS = 1000;
+
+	// Delay before reconnecting to an unavailable peer, doubled after every failed attempt up to the maximum
+	public long RECONNECT_INITIAL_DELAY_MILISECONDS = 500;
+	public long RECONNECT_MAX_DELAY_MILISECONDS = 30000;
+	// Failed connection attempts in a row after which the worker of a peer gives up and drops its queue (0: retry forever)
+	public int RECONNECT_MAX_ATTEMPTS = 5;
+
+	// Store block messages for unavailable peers on disk and send them after reconnecting
+	public boolean PEER_OUTBOX_ENABLED = false;
+	public String PEER_OUTBOX_DIRECTORY = "outbox";
+	public long PEER_OUTBOX_TTL_SECONDS = 600;
+
+	// Idle request connections (sync, status) kept open per peer and how long they are kept
+	public int CONNECTION_POOL_MAX_IDLE_PER_PEER = 4;
+	public long CONNECTION_POOL_IDLE_TIMEOUT_MILISECONDS = 60000;
+
+	// Broadcast of blocks and Tx: "flood" (to all participants) or "gossip" (random fan-out, relayed up to GossipTTL hops)
+	public String BROADCAST_MODE = "flood";
+	public int GOSSIP_FANOUT = 4;
+	public int GOSSIP_TTL = 6;
+	public int GOSSIP_SEEN_CACHE_SIZE = 100000;
+
+	// Announce blocks and Tx by hash (Inv) and send the full message on request (GetData) only
+	public boolean INVENTORY_ANNOUNCEMENTS = false;
+	public int INVENTORY_CACHE_SIZE = 10000;
+	public long INVENTORY_REQUEST_TIMEOUT_MILISECONDS = 5000;
+
+	// Send blocks as header and short Tx ids, receivers rebuild them from their unconfirmed Tx (only blocks from BlockVersion 2 on)
+	public boolean COMPACT_BLOCKS = false;
+
+	// Number of received block and Tx messages remembered to drop duplicates before parsing
+	public int SEEN_MESSAGE_CACHE_SIZE = 100000;
+
+	// Incoming messages per second and peer for Tx, blocks and other messages (0 = unlimited), bucket size in seconds of messages
+	public double RATE_LIMIT_TX_PER_SECOND = 0;
+	public double RATE_LIMIT_BLOCKS_PER_SECOND = 0;
+	public double RATE_LIMIT_REQUESTS_PER_SECOND = 0;
+	public double RATE_LIMIT_BURST_SECONDS = 2;
+
+	// Messages processed at the same time (0 = unlimited) and messages read ahead per connection by the nio server (0 = unlimited)
+	public int SERVER_MAX_IN_FLIGHT_MESSAGES = 0;
+	public int SERVER_INBOUND_QUEUE_CAPACITY = 1000;
 	
 }
@@ -7,15 +7,10 @@
 
 package at.entrust.resselchain.main;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.communication.ConnectionPool;
 import at.entrust.resselchain.utils.TimeSlots;
 import nu.xom.Builder;
 import nu.xom.Document;
@@ -28,9 +23,11 @@ public class Amount {
     private static void showUsage() {
         System.out.println("Ressel Chain Node Amount (Amount)");
         System.out.println("Read Amount from a specified node.");
-        System.out.println("Usage: Amount -h | (<Node Address> <Node Port>)");
+        System.out.println("Usage: Amount -h | (<Node Address> <Node Port> <assetName> <Date> [<Slot>])");
         System.out.println("-h : display help");
         System.out.println("<Node Address> <Node Port> <assetName> <Date> : IP address and port of the node to request Amount from");
+        System.out.println("                                                and the day (days since 1970-01-01) of the requested distribution");
+        System.out.println("<Slot> : optional quarter-hour slot of the day (0 to 92, 96 or 100), end of the day if omitted");
     }
 
     /* https://stackoverflow.com/questions/139076/how-to-pretty-print-xml-from-java */
@@ -50,7 +47,7 @@ public class Amount {
             showUsage();
             System.exit(0);
         }
-        else if (args.length == 4) {
+        else if (args.length == 4 || args.length == 5) {
             try {
                 // parse arguments
                 String nodeAddress = args[0];
@@ -67,6 +64,15 @@ public class Amount {
                 xmlDate.appendChild(date +"");
                 xmlRoot.appendChild(xmlDate);
 
+                if (args.length == 5) {
+                    int slot = Integer.valueOf(args[4]);
+                    if (slot < 0 || slot > TimeSlots.getSlotsPerDay(date))
+                        throw new IllegalArgumentException("Invalid slot");
+                    Element xmlSlot = new Element("Slot");
+                    xmlSlot.appendChild(slot + "");
+                    xmlRoot.appendChild(xmlSlot);
+                }
+
                 Document doc = new Document(xmlRoot);
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
                 try {
@@ -77,21 +83,9 @@ public class Amount {
                     String amountRequest = out.toString().replace('\n', ' ');
 
 
-                    SSLSocket socket = (SSLSocket)SSLSocketFactory.getDefault().createSocket(nodeAddress, nodePort);
-                    socket.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
-
-                    PrintWriter output = new PrintWriter(socket.getOutputStream());
-                    BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                    output.println(amountRequest);
-                    output.flush();
-                    String response = input.readLine();
+                    String response = ConnectionPool.INSTANCE.request(nodeAddress, nodePort, amountRequest, 0);
                     System.out.println(format(response));
-
-                    //output.println("EOL");
-                    output.close();
-                    input.close();
-                    socket.close();
+                    ConnectionPool.INSTANCE.closeAll();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
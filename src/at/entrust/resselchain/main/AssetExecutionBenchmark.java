@@ -0,0 +1,112 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import at.entrust.resselchain.chain.Transaction;
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.statetable.AssetStateTable;
+
+public class AssetExecutionBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 20;
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Asset Execution Benchmark (AssetExecutionBenchmark)");
+		System.out.println("Compares sequential execution of the Tx of one asset with a parallel precheck in memory.");
+		System.out.println("Usage: AssetExecutionBenchmark -h | [<Tx count> [<Participants>]]");
+		System.out.println("-h : display help");
+		System.out.println("<Tx count> : number of Tx per block (default 10000)");
+		System.out.println("<Participants> : number of participants of the asset (default 10000)");
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 1 && args[0].equals("-h")) {
+			showUsage();
+			System.exit(0);
+		}
+
+		int txCount = 10000;
+		int participantCount = 10000;
+		try {
+			if (args.length > 0)
+				txCount = Integer.valueOf(args[0]);
+			if (args.length > 1)
+				participantCount = Integer.valueOf(args[1]);
+		} catch (NumberFormatException e) {
+			System.out.println("AssetExecutionBenchmark: One or more arguments are in invalid format. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, GlobalConfig.INSTANCE.VALIDATION_THREADS));
+		System.out.println("Tx: " + txCount + ", Participants: " + participantCount + ", Threads: " + pool.getParallelism());
+
+		// share of Tx sent by a single participant
+		String[] contention = {"none", "low", "high"};
+		int[] senders = {participantCount, Math.max(1, participantCount / 10), 1};
+		for (int c = 0; c < contention.length; c++) {
+			AssetStateTable table = createTable("Benchmark" + c, participantCount, txCount);
+			ArrayList<Transaction> txs = createTransactions("Benchmark" + c, participantCount, senders[c], txCount);
+
+			long sequential = run(table, txs, null);
+			long precheck = run(table, txs, pool);
+			System.out.println("Contention " + contention[c] + " (" + senders[c] + " senders): sequential " + sequential + "us, precheck " + precheck + "us per block");
+		}
+		pool.shutdown();
+	}
+
+	private static AssetStateTable createTable(String assetName, int participantCount, int txCount) {
+		ArrayList<String> participants = new ArrayList<>();
+		HashMap<String, Integer> shares = new HashMap<>();
+		for (int i = 0; i < participantCount; i++) {
+			participants.add("P" + i);
+			shares.put("P" + i, txCount);
+		}
+		return new AssetStateTable(assetName, participants, shares);
+	}
+
+	private static ArrayList<Transaction> createTransactions(String assetName, int participantCount, int senderCount, int txCount) {
+		ArrayList<Transaction> txs = new ArrayList<>();
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < txCount; i++) {
+			String sender = "P" + (i % senderCount);
+			String receiver = "P" + ((i % senderCount + 1 + i / senderCount) % participantCount);
+			txs.add(new Transaction(sender, receiver, timestamp + i, 1, false, assetName));
+		}
+		return txs;
+	}
+
+	// average time in microseconds to process all Tx, the table is rolled back after each round
+	private static long run(AssetStateTable table, ArrayList<Transaction> txs, ForkJoinPool pool) {
+		long total = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			int version = table.snapshot();
+			long startTime = System.nanoTime();
+			boolean valid = true;
+			if (pool == null) {
+				for (Transaction tx : txs)
+					valid &= table.processTransaction(tx);
+			} else {
+				valid = table.processTransactionsWithPrecheck(txs, pool) == null;
+			}
+			long time = System.nanoTime() - startTime;
+			table.rollback(version);
+
+			if (!valid)
+				throw new IllegalStateException("Benchmark Tx must be valid.");
+			if (round >= WARMUP_ROUNDS)
+				total += time;
+		}
+		return total / ROUNDS / 1000;
+	}
+}
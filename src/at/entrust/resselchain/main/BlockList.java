@@ -7,15 +7,10 @@
 
 package at.entrust.resselchain.main;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.communication.ConnectionPool;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
@@ -85,21 +80,9 @@ public class BlockList {
 					
 					String blockListRequest = out.toString().replace('\n', ' ');
 					
-					SSLSocket socket = (SSLSocket)SSLSocketFactory.getDefault().createSocket(nodeAddress, nodePort);
-					socket.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
-					
-					PrintWriter output = new PrintWriter(socket.getOutputStream());
-					BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-					
-					output.println(blockListRequest);
-					output.flush();
-					String response = input.readLine();
+					String response = ConnectionPool.INSTANCE.request(nodeAddress, nodePort, blockListRequest, 0);
 					System.out.println(format(response));
-
-					output.println("EOL");
-					output.close();
-					input.close();
-					socket.close();
+					ConnectionPool.INSTANCE.closeAll();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
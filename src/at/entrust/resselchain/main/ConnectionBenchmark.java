@@ -0,0 +1,157 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import at.entrust.resselchain.communication.ConnectionThreads;
+import at.entrust.resselchain.communication.NioServer;
+import at.entrust.resselchain.communication.Server;
+import at.entrust.resselchain.config.GlobalConfig;
+
+public class ConnectionBenchmark {
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Connection Benchmark (ConnectionBenchmark)");
+		System.out.println("Starts a local server answering every message and connects many clients at the same time.");
+		System.out.println("Reports the connections established, the round trip latency and the threads used.");
+		System.out.println("Usage: ConnectionBenchmark -h | <Mode> [<Connections> [<Messages> [<Port>]]]");
+		System.out.println("-h : display help");
+		System.out.println("<Mode> : platform or virtual (thread per connection server) or nio (non-blocking server)");
+		System.out.println("<Connections> : number of concurrent connections (default 1000)");
+		System.out.println("<Messages> : number of messages sent on each connection (default 20)");
+		System.out.println("<Port> : port of the local server (default 18500)");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length == 0 || (args.length == 1 && args[0].equals("-h"))) {
+			showUsage();
+			System.exit(0);
+		}
+
+		String mode = args[0];
+		int connections = 1000;
+		int messages = 20;
+		int port = 18500;
+		try {
+			if (args.length > 1)
+				connections = Integer.valueOf(args[1]);
+			if (args.length > 2)
+				messages = Integer.valueOf(args[2]);
+			if (args.length > 3)
+				port = Integer.valueOf(args[3]);
+		} catch (NumberFormatException e) {
+			System.out.println("ConnectionBenchmark: One or more arguments are in invalid format. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		if (mode.equals(NioServer.MODE)) {
+			GlobalConfig.INSTANCE.SERVER_MODE = NioServer.MODE;
+		} else {
+			GlobalConfig.INSTANCE.SERVER_MODE = "threads";
+			GlobalConfig.INSTANCE.CONNECTION_THREAD_MODE = mode;
+		}
+		System.out.println("Mode: " + mode + " (virtual threads: " + ConnectionThreads.INSTANCE.isVirtual() + "), Connections: " + connections + ", Messages: " + messages);
+
+		Server.startServer(port, (message, output) -> {
+			output.println(message);
+			output.flush();
+		});
+		Thread.sleep(500); // wait for the server socket
+
+		final int messagesPerConnection = messages;
+		final int serverPort = port;
+		AtomicInteger connected = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		CountDownLatch ready = new CountDownLatch(connections);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(connections);
+		long[] latencies = new long[connections * messages];
+		AtomicInteger measured = new AtomicInteger();
+
+		long connectStartTime = System.nanoTime();
+		for (int c = 0; c < connections; c++) {
+			final int client = c;
+			Thread t = ConnectionThreads.INSTANCE.newThread(() -> {
+				SSLSocket socket = null;
+				boolean isConnected = false;
+				try {
+					socket = (SSLSocket) SSLSocketFactory.getDefault().createSocket("localhost", serverPort);
+					socket.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
+					socket.startHandshake();
+					PrintWriter output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+					BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+					connected.incrementAndGet();
+					isConnected = true;
+					ready.countDown();
+					start.await();
+
+					for (int i = 0; i < messagesPerConnection; i++) {
+						long startTime = System.nanoTime();
+						output.println("<Benchmark>" + client + "-" + i + "</Benchmark>");
+						output.flush();
+						if (input.readLine() == null)
+							throw new IOException("Connection closed by server");
+						latencies[measured.getAndIncrement()] = System.nanoTime() - startTime;
+					}
+					output.println("EOL");
+					output.flush();
+				} catch (IOException | InterruptedException e) {
+					failed.incrementAndGet();
+					if (!isConnected)
+						ready.countDown();
+				} finally {
+					try {
+						if (socket != null)
+							socket.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					done.countDown();
+				}
+			}, "Benchmark Client " + c);
+			t.start();
+		}
+
+		ready.await();
+		long connectTime = System.nanoTime() - connectStartTime;
+		int peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+		long usedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+		long messageStartTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		long messageTime = System.nanoTime() - messageStartTime;
+
+		int count = measured.get();
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		System.out.println("Connected: " + connected.get() + ", failed: " + failed.get() + " in " + connectTime / 1000000 + "ms");
+		System.out.println("Peak platform threads: " + peakThreads + ", heap used: " + usedMemory / (1024 * 1024) + "MB");
+		if (count > 0) {
+			System.out.println("Messages: " + count + " in " + messageTime / 1000000 + "ms (" + (long) (count / (messageTime / 1e9)) + "/s)");
+			System.out.println("Latency: p50 " + sorted[count / 2] / 1000 + "us, p99 " + sorted[(int) (count * 0.99)] / 1000 + "us, max " + sorted[count - 1] / 1000 + "us");
+		}
+
+		Server.stopServer();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.CryptoEngines;
+import at.entrust.resselchain.utils.Sign;
+import at.entrust.resselchain.utils.SignatureScheme;
+
+public class CryptoBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 10;
+
+	private interface Operation {
+		void run() throws GeneralSecurityException;
+	}
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Crypto Benchmark (CryptoBenchmark)");
+		System.out.println("Compares new digest and signature instances per call with reused instances");
+		System.out.println("and sign/verify time as well as key and signature sizes of all signature schemes.");
+		System.out.println("Usage: CryptoBenchmark -h | [<Operations>]");
+		System.out.println("-h : display help");
+		System.out.println("<Operations> : number of operations per round (default 10000)");
+	}
+
+	public static void main(String[] args) throws GeneralSecurityException {
+		if (args.length == 1 && args[0].equals("-h")) {
+			showUsage();
+			System.exit(0);
+		}
+
+		int operations = 10000;
+		try {
+			if (args.length > 0)
+				operations = Integer.valueOf(args[0]);
+		} catch (NumberFormatException e) {
+			System.out.println("CryptoBenchmark: Invalid arguments. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		Start.removeCryptographyRestrictions();
+
+		String hashAlgorithm = GlobalConfig.INSTANCE.HASH_ALOGITHM;
+		String signatureAlgorithm = GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM;
+		byte[] data = "SenderReceiverAsset15000000000001Tag".getBytes(StandardCharsets.UTF_8);
+		KeyPair kp = Sign.getKeyPair();
+
+		Signature signer = Signature.getInstance(signatureAlgorithm);
+		signer.initSign(kp.getPrivate());
+		signer.update(data);
+		byte[] signature = signer.sign();
+
+		print("Hash, new instance", operations, () -> MessageDigest.getInstance(hashAlgorithm).digest(data));
+		print("Hash, reused instance", operations, () -> CryptoEngines.getDigest(hashAlgorithm).digest(data));
+
+		print("Verify, new instance", operations, () -> {
+			Signature sig = Signature.getInstance(signatureAlgorithm);
+			sig.initVerify(kp.getPublic());
+			sig.update(data);
+			sig.verify(signature);
+		});
+		print("Verify, reused instance", operations, () -> {
+			Signature sig = CryptoEngines.getSignature(signatureAlgorithm);
+			sig.initVerify(kp.getPublic());
+			sig.update(data);
+			sig.verify(signature);
+		});
+
+		for (SignatureScheme scheme : SignatureScheme.values()) {
+			KeyPair schemeKp;
+			try {
+				schemeKp = scheme.generateKeyPair();
+			} catch (NoSuchAlgorithmException e) {
+				System.out.println(scheme + ": not supported by this Java version");
+				continue;
+			}
+			String schemeAlgorithm = scheme.getSignatureAlgorithm();
+			Signature schemeSigner = CryptoEngines.getSignature(schemeAlgorithm);
+			schemeSigner.initSign(schemeKp.getPrivate());
+			schemeSigner.update(data);
+			byte[] schemeSignature = schemeSigner.sign();
+
+			System.out.println(scheme + ": signature " + schemeSignature.length + " bytes (" + Base64Converter.encodeFromByteArray(schemeSignature).length() + " Base64), public key " + schemeKp.getPublic().getEncoded().length + " bytes");
+			print(scheme + " sign", operations, () -> {
+				Signature sig = CryptoEngines.getSignature(schemeAlgorithm);
+				sig.initSign(schemeKp.getPrivate());
+				sig.update(data);
+				sig.sign();
+			});
+			print(scheme + " verify", operations, () -> {
+				Signature sig = CryptoEngines.getSignature(schemeAlgorithm);
+				sig.initVerify(schemeKp.getPublic());
+				sig.update(data);
+				sig.verify(schemeSignature);
+			});
+		}
+	}
+
+	// prints the average time of a single operation in nanoseconds
+	private static void print(String name, int operations, Operation operation) throws GeneralSecurityException {
+		long total = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			long startTime = System.nanoTime();
+			for (int i = 0; i < operations; i++)
+				operation.run();
+			if (round >= WARMUP_ROUNDS)
+				total += System.nanoTime() - startTime;
+		}
+		System.out.println(name + ": " + total / ROUNDS / operations + "ns");
+	}
+}
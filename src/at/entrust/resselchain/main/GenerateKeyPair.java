@@ -14,11 +14,14 @@ import java.security.PublicKey;
 
 import at.entrust.resselchain.utils.Base64Converter;
 import at.entrust.resselchain.utils.Sign;
+import at.entrust.resselchain.utils.SignatureScheme;
 
 public class GenerateKeyPair {
 
+	// optional argument: signature scheme (RSA, ECDSA or Ed25519), default is the configured PKSKAlgorithm
 	public static void main(String[] args) throws NoSuchAlgorithmException {
-		KeyPair kp = Sign.getKeyPair();
+		SignatureScheme scheme = (args.length > 0) ? SignatureScheme.fromName(args[0]) : SignatureScheme.getDefault();
+		KeyPair kp = Sign.getKeyPair(scheme);
 		PrivateKey sk = kp.getPrivate();
 		PublicKey pk = kp.getPublic();
 
@@ -27,6 +30,8 @@ public class GenerateKeyPair {
 		
 		System.out.println("<SecretKey>" + skBase64 + "</SecretKey>");
 		System.out.println("<PublicKey>" + pkBase64 + "</PublicKey>");
+		if (args.length > 0)
+			System.out.println("<SignatureScheme>" + scheme + "</SignatureScheme>");
 	}
 
 }
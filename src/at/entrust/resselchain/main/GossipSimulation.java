@@ -0,0 +1,175 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import at.entrust.resselchain.communication.Gossip;
+import at.entrust.resselchain.config.GlobalConfig;
+
+public class GossipSimulation {
+
+	private static final int TRIALS = 100;
+	private static final double MIN_LATENCY_MILISECONDS = 20;
+	private static final double MAX_LATENCY_MILISECONDS = 100;
+	private static final double UPLINK_KBIT_PER_SECOND = 10000;
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Gossip Simulation (GossipSimulation)");
+		System.out.println("Simulates the broadcast of one message from a random node with flooding and with gossip.");
+		System.out.println("Every node sends its copies one after the other over a " + (int) UPLINK_KBIT_PER_SECOND / 1000 + " Mbit/s uplink,");
+		System.out.println("every copy has a random network latency of " + (int) MIN_LATENCY_MILISECONDS + "-" + (int) MAX_LATENCY_MILISECONDS + "ms.");
+		System.out.println("Reports coverage, latency until the nodes received the message and messages sent.");
+		System.out.println("Usage: GossipSimulation -h | [<Nodes> [<Fanout> [<TTL> [<MessageKB>]]]]");
+		System.out.println("-h : display help");
+		System.out.println("<Nodes> : number of nodes (default 200)");
+		System.out.println("<Fanout> : gossip fan-out (default GossipFanout)");
+		System.out.println("<TTL> : gossip TTL (default GossipTTL)");
+		System.out.println("<MessageKB> : message size in KB (default 100)");
+	}
+
+	// a message arriving at a node
+	private static class Event implements Comparable<Event> {
+		final double time;
+		final int node;
+		final int from;
+		final int ttl;
+
+		Event(double time, int node, int from, int ttl) {
+			this.time = time;
+			this.node = node;
+			this.from = from;
+			this.ttl = ttl;
+		}
+
+		@Override
+		public int compareTo(Event e) {
+			return Double.compare(time, e.time);
+		}
+	}
+
+	private static class Result {
+		double coverage = 0;
+		double minCoverage = 1;
+		ArrayList<Double> latencies = new ArrayList<>();
+		long messages = 0;
+		long duplicates = 0;
+		int maxSentByNode = 0;
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 1 && args[0].equals("-h")) {
+			showUsage();
+			System.exit(0);
+		}
+
+		int nodes = 200;
+		int fanout = GlobalConfig.INSTANCE.GOSSIP_FANOUT;
+		int ttl = GlobalConfig.INSTANCE.GOSSIP_TTL;
+		int messageSize = 100;
+		try {
+			if (args.length > 0)
+				nodes = Integer.valueOf(args[0]);
+			if (args.length > 1)
+				fanout = Integer.valueOf(args[1]);
+			if (args.length > 2)
+				ttl = Integer.valueOf(args[2]);
+			if (args.length > 3)
+				messageSize = Integer.valueOf(args[3]);
+		} catch (NumberFormatException e) {
+			System.out.println("GossipSimulation: One or more arguments are in invalid format. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		System.out.println("Nodes: " + nodes + ", Fanout: " + fanout + ", TTL: " + ttl + ", Message: " + messageSize + "KB, Trials: " + TRIALS);
+		print(Gossip.FLOOD_MODE, simulate(nodes, fanout, ttl, messageSize, false), messageSize);
+		print(Gossip.GOSSIP_MODE, simulate(nodes, fanout, ttl, messageSize, true), messageSize);
+	}
+
+	private static Result simulate(int nodes, int fanout, int ttl, int messageSize, boolean isGossip) {
+		Random random = new Random(42);
+		double transmissionTime = messageSize * 8 / UPLINK_KBIT_PER_SECOND * 1000;
+		Result result = new Result();
+
+		for (int trial = 0; trial < TRIALS; trial++) {
+			int origin = random.nextInt(nodes);
+			double[] received = new double[nodes];
+			Arrays.fill(received, -1);
+			double[] uplinkFree = new double[nodes];
+			int[] sent = new int[nodes];
+			PriorityQueue<Event> events = new PriorityQueue<>();
+
+			received[origin] = 0;
+			send(origin, -1, 0, ttl, origin, nodes, fanout, isGossip, random, transmissionTime, uplinkFree, sent, events);
+
+			while (!events.isEmpty()) {
+				Event e = events.poll();
+				result.messages++;
+				if (received[e.node] >= 0) {
+					result.duplicates++;
+					continue;
+				}
+				received[e.node] = e.time;
+				// flooding: only the origin sends
+				if (isGossip && e.ttl > 1)
+					send(e.node, e.from, e.time, e.ttl - 1, origin, nodes, fanout, isGossip, random, transmissionTime, uplinkFree, sent, events);
+			}
+
+			int covered = 0;
+			for (int n = 0; n < nodes; n++) {
+				if (n != origin && received[n] >= 0) {
+					covered++;
+					result.latencies.add(received[n]);
+				}
+				result.maxSentByNode = Math.max(result.maxSentByNode, sent[n]);
+			}
+			double coverage = nodes > 1 ? (double) covered / (nodes - 1) : 1;
+			result.coverage += coverage / TRIALS;
+			result.minCoverage = Math.min(result.minCoverage, coverage);
+		}
+		return result;
+	}
+
+	private static void send(int node, int from, double time, int ttl, int origin, int nodes, int fanout, boolean isGossip, Random random,
+			double transmissionTime, double[] uplinkFree, int[] sent, PriorityQueue<Event> events) {
+		ArrayList<Integer> candidates = new ArrayList<>();
+		for (int n = 0; n < nodes; n++) {
+			if (n != node && n != from && n != origin)
+				candidates.add(n);
+		}
+		ArrayList<Integer> receivers = isGossip ? Gossip.selectPeers(candidates, fanout, random) : candidates;
+
+		// copies leave the uplink one after the other
+		double start = Math.max(time, uplinkFree[node]);
+		for (int receiver : receivers) {
+			start += transmissionTime;
+			double latency = MIN_LATENCY_MILISECONDS + random.nextDouble() * (MAX_LATENCY_MILISECONDS - MIN_LATENCY_MILISECONDS);
+			events.add(new Event(start + latency, receiver, node, ttl));
+			sent[node]++;
+		}
+		uplinkFree[node] = start;
+	}
+
+	private static void print(String mode, Result result, int messageSize) {
+		double[] latencies = new double[result.latencies.size()];
+		for (int i = 0; i < latencies.length; i++)
+			latencies[i] = result.latencies.get(i);
+		Arrays.sort(latencies);
+
+		System.out.println(mode + ":");
+		System.out.println("  Coverage: avg " + String.format("%.2f", result.coverage * 100) + "%, min " + String.format("%.2f", result.minCoverage * 100) + "%");
+		if (latencies.length > 0)
+			System.out.println("  Latency: p50 " + (long) latencies[latencies.length / 2] + "ms, p95 " + (long) latencies[(int) (latencies.length * 0.95)] + "ms, max " + (long) latencies[latencies.length - 1] + "ms");
+		System.out.println("  Messages per broadcast: " + result.messages / TRIALS + " (" + result.messages / TRIALS * messageSize / 1024 + "MB), duplicates: " + result.duplicates / TRIALS);
+		System.out.println("  Max messages sent by one node: " + result.maxSentByNode);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.util.ArrayList;
+
+import at.entrust.resselchain.chain.Block;
+import at.entrust.resselchain.chain.Transaction;
+
+public class HashBenchmark {
+
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int ROUNDS = 100;
+
+	// hash lookups per Tx when a block is appended: containsTx, addTx and the Tx hash in the block hash
+	private static final int TX_HASH_CALLS = 3;
+	// block hash lookups per append, e.g. getLastBlock before and after, isValid and the fork walk
+	private static final int BLOCK_HASH_CALLS = 4;
+
+	private interface Operation {
+		void run(Block block);
+	}
+
+	// hashes like before memoization, i.e. on every call
+	private static class UncachedTransaction extends Transaction {
+		private static final long serialVersionUID = 1L;
+
+		UncachedTransaction(Transaction tx) {
+			super(tx.getSender(), tx.getReceiver(), tx.getTimestamp(), tx.getAmount(), tx.isExternal(), tx.getAssetName());
+		}
+
+		@Override
+		public byte[] getTransactionHash() {
+			return computeTransactionHash();
+		}
+	}
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Hash Benchmark (HashBenchmark)");
+		System.out.println("Compares the Tx and block hashing done when a block is appended, with hashes computed on every call");
+		System.out.println("(as before memoization) and with cached hashes. Signatures and the Tx state table are not included.");
+		System.out.println("Usage: HashBenchmark -h | [<Tx count>]");
+		System.out.println("-h : display help");
+		System.out.println("<Tx count> : number of Tx per block (default 1000)");
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 1 && args[0].equals("-h")) {
+			showUsage();
+			System.exit(0);
+		}
+
+		int txCount = 1000;
+		try {
+			if (args.length > 0)
+				txCount = Integer.valueOf(args[0]);
+		} catch (NumberFormatException e) {
+			System.out.println("HashBenchmark: One or more arguments are in invalid format. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		ArrayList<Transaction> txs = new ArrayList<>();
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < txCount; i++)
+			txs.add(new Transaction("Sender" + (i % 100), "Receiver" + (i % 97), timestamp + i, 1 + i % 10, false, "Asset"));
+
+		System.out.println("Tx per block: " + txCount + ", Tx hash calls per Tx: " + TX_HASH_CALLS + ", block hash calls per block: " + BLOCK_HASH_CALLS);
+		print("Computed on every call", txs, false, block -> {
+			for (Transaction tx : block.getTransactions()) {
+				for (int i = 0; i < TX_HASH_CALLS; i++)
+					tx.getTransactionHash();
+			}
+			// resetting the nonce drops the cached block hash
+			for (int i = 0; i < BLOCK_HASH_CALLS; i++) {
+				block.setNonce(block.getNonce());
+				block.getBlockHash();
+			}
+		});
+		print("Cached", txs, true, block -> {
+			for (Transaction tx : block.getTransactions()) {
+				for (int i = 0; i < TX_HASH_CALLS; i++)
+					tx.getTransactionHash();
+			}
+			for (int i = 0; i < BLOCK_HASH_CALLS; i++)
+				block.getBlockHash();
+		});
+	}
+
+	// new Tx objects, so no hash is cached yet
+	private static Block createBlock(ArrayList<Transaction> txs, boolean isCached) {
+		Block block = new Block(System.currentTimeMillis(), 1, 0, "Miner", 1, new byte[32], "");
+		for (Transaction tx : txs) {
+			if (isCached)
+				block.addTransaction(new Transaction(tx.getSender(), tx.getReceiver(), tx.getTimestamp(), tx.getAmount(), tx.isExternal(), tx.getAssetName()));
+			else
+				block.addTransaction(new UncachedTransaction(tx));
+		}
+		return block;
+	}
+
+	// prints the average time per block in microseconds, every round uses a new block
+	private static void print(String name, ArrayList<Transaction> txs, boolean isCached, Operation operation) {
+		long total = 0;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			Block block = createBlock(txs, isCached);
+			long startTime = System.nanoTime();
+			operation.run(block);
+			if (round >= WARMUP_ROUNDS)
+				total += System.nanoTime() - startTime;
+		}
+		System.out.println(name + ": " + total / ROUNDS / 1000 + "us per block");
+	}
+}
@@ -12,15 +12,12 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.Permission;
 import java.security.PermissionCollection;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -38,6 +35,7 @@ import at.entrust.resselchain.state.ParticipantsAlreadyExistsException;
 import at.entrust.resselchain.statetable.AssetStateTable;
 import at.entrust.resselchain.tree.TreeNode;
 import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.SignatureScheme;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
@@ -67,9 +65,19 @@ public class Start {
 		// Note: When exporting Java generated key with getEncoded,
 		// the public key is in X509 format and the private key is in PKCS8 format;
 		// therefore we need to import them accordingly
-		KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-		PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(Base64Converter.decodeToByteArray(root.getChildElements("PublicKey").get(0).getValue())));
-		PrivateKey secretKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64Converter.decodeToByteArray(root.getChildElements("SecretKey").get(0).getValue())));
+		// the signature scheme is optional, it is derived from the keys if missing
+		byte[] encodedPublicKey = Base64Converter.decodeToByteArray(root.getChildElements("PublicKey").get(0).getValue());
+		byte[] encodedSecretKey = Base64Converter.decodeToByteArray(root.getChildElements("SecretKey").get(0).getValue());
+		PublicKey publicKey;
+		PrivateKey secretKey;
+		if (root.getChildElements("SignatureScheme").size() != 0) {
+			SignatureScheme scheme = SignatureScheme.fromName(root.getChildElements("SignatureScheme").get(0).getValue());
+			publicKey = scheme.decodePublicKey(encodedPublicKey);
+			secretKey = scheme.decodePrivateKey(encodedSecretKey);
+		} else {
+			publicKey = SignatureScheme.decodeAnyPublicKey(encodedPublicKey);
+			secretKey = SignatureScheme.decodeAnyPrivateKey(encodedSecretKey);
+		}
 		
 		String nodeName = root.getChildElements("Name").get(0).getValue();
 		
@@ -99,7 +107,11 @@ public class Start {
 			if (participants.get(i).getChildElements("SpecialRole").size() != 0)
 				specialRole = participants.get(i).getChildElements("SpecialRole").get(0).getValue();
 
-			Participant p = new Participant(participants.get(i).getChildElements("Name").get(0).getValue(), Base64Converter.decodeToByteArray(participants.get(i).getChildElements("PublicKey").get(0).getValue()), participants.get(i).getChildElements("Address").get(0).getValue(), Integer.valueOf(participants.get(i).getChildElements("Port").get(0).getValue()), specialParticipantRole);
+			SignatureScheme participantScheme = null;
+			if (participants.get(i).getChildElements("SignatureScheme").size() != 0)
+				participantScheme = SignatureScheme.fromName(participants.get(i).getChildElements("SignatureScheme").get(0).getValue());
+
+			Participant p = new Participant(participants.get(i).getChildElements("Name").get(0).getValue(), Base64Converter.decodeToByteArray(participants.get(i).getChildElements("PublicKey").get(0).getValue()), participants.get(i).getChildElements("Address").get(0).getValue(), Integer.valueOf(participants.get(i).getChildElements("Port").get(0).getValue()), specialParticipantRole, participantScheme);
 			ChainState.INSTANCE.addParticipant(p);
 		}
 		
@@ -7,17 +7,13 @@
 
 package at.entrust.resselchain.main;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.communication.ConnectionPool;
 import nu.xom.Builder;
 import nu.xom.Document;
 import nu.xom.Element;
@@ -29,9 +25,10 @@ public class Status {
 	private static void showUsage() {
 		System.out.println("Ressel Chain Node Status (Status)");
 		System.out.println("Read status from a specified node.");
-		System.out.println("Usage: Status -h | (<Node Address> <Node Port>)");
+		System.out.println("Usage: Status -h | (<Node Address> <Node Port>) [-r <Seconds>]");
 		System.out.println("-h : display help");
 		System.out.println("<Node Address> <Node Port> : IP address and port of the node to request status from");
+		System.out.println("-r <Seconds> : request the status repeatedly over the same connection");
 	}
 	
 	/* https://stackoverflow.com/questions/139076/how-to-pretty-print-xml-from-java */
@@ -51,7 +48,20 @@ public class Status {
 			showUsage();
 			System.exit(0);
 		}
-		else if (args.length == 2 || args.length == 5) {
+
+		int repeatSeconds = 0;
+		if (args.length >= 4 && args[args.length - 2].equals("-r")) {
+			try {
+				repeatSeconds = Integer.valueOf(args[args.length - 1]);
+			} catch (NumberFormatException e) {
+				System.out.println("Status: One or more arguments are in invalid format. See usage below.\n");
+				showUsage();
+				System.exit(1);
+			}
+			args = Arrays.copyOf(args, args.length - 2);
+		}
+
+		if (args.length == 2 || args.length == 5) {
 			
 			String ipAddress = "";
 			if (args.length == 2) {
@@ -129,21 +139,14 @@ public class Status {
 						if (client !=  null)
 							client.terminateConnection();
 					}*/
-					SSLSocket socket = (SSLSocket)SSLSocketFactory.getDefault().createSocket(nodeAddress, nodePort);
-					socket.setEnabledCipherSuites(new String[] {GlobalConfig.INSTANCE.SSL_SOCKET_CIPHER_SUITE});
-					
-					PrintWriter output = new PrintWriter(socket.getOutputStream());
-					BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-					
-					output.println(statusRequest);
-					output.flush();
-					String response = input.readLine();
-					System.out.println(format(response));
-
-					//output.println("EOL");
-					output.close();
-					input.close();
-					socket.close();
+					// repeated requests reuse the connection
+					do {
+						String response = ConnectionPool.INSTANCE.request(nodeAddress, nodePort, statusRequest, 0);
+						System.out.println(format(response));
+						if (repeatSeconds > 0)
+							Thread.sleep(repeatSeconds * 1000L);
+					} while (repeatSeconds > 0);
+					ConnectionPool.INSTANCE.closeAll();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
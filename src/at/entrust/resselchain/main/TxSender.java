@@ -9,11 +9,9 @@ package at.entrust.resselchain.main;
 
 import java.io.File;
 import java.security.InvalidKeyException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.SignatureException;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.DayOfWeek;
@@ -27,6 +25,7 @@ import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.config.ParticipantConfig;
 import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.SignatureScheme;
 import at.entrust.resselchain.utils.Sign;
 import at.entrust.resselchain.utils.TimeSlots;
 import nu.xom.Builder;
@@ -71,8 +70,7 @@ public class TxSender {
 				String nodeAddress = args[1];
 				int nodePort = Integer.valueOf(args[2]);
 				String senderName = args[3];
-				KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-				PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64Converter.decodeToByteArray(args[4])));
+				PrivateKey privateKey = SignatureScheme.decodeAnyPrivateKey(Base64Converter.decodeToByteArray(args[4]));
 				String receipientName = args[5];
 				String assetName = args[6];
 				int amount = Integer.valueOf(args[7]);
@@ -99,8 +97,7 @@ public class TxSender {
 				String nodeAddress = receiverNodeRoot.getChildElements("Address").get(0).getValue();
 				int nodePort = Integer.valueOf(receiverNodeRoot.getChildElements("Port").get(0).getValue());
 				String senderName = senderNodeRoot.getChildElements("Name").get(0).getValue();
-				KeyFactory keyFactory = KeyFactory.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-				PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64Converter.decodeToByteArray(senderNodeRoot.getChildElements("SecretKey").get(0).getValue())));
+				PrivateKey privateKey = SignatureScheme.decodeAnyPrivateKey(Base64Converter.decodeToByteArray(senderNodeRoot.getChildElements("SecretKey").get(0).getValue()));
 				String receipientName = receiverNodeRoot.getChildElements("Name").get(0).getValue();
 				String assetName = args[3];
 				int amount = Integer.valueOf(args[4]);
@@ -152,6 +149,7 @@ public class TxSender {
 
 			
 			Transaction tx = new Transaction(senderName, receipientName, System.currentTimeMillis(), amount, true, assetName);
+			tx.setVersion(GlobalConfig.INSTANCE.TX_VERSION);
 			Sign.signTransaction(tx, privateKey);
 
 			// send transaction
@@ -0,0 +1,183 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.statetable.OffHeapTxHashStore;
+import at.entrust.resselchain.statetable.SQLiteTxHashStore;
+import at.entrust.resselchain.statetable.TxHashStore;
+import at.entrust.resselchain.utils.Base64Converter;
+
+public class TxStateBenchmark {
+
+	private static final int BATCH_SIZE = 100000;
+
+	private interface Operation {
+		void run(int i);
+	}
+
+	private static void showUsage() {
+		System.out.println("Ressel Chain Tx State Benchmark (TxStateBenchmark)");
+		System.out.println("Fills a tx state table with hashes in a temporary directory, reopens it and measures");
+		System.out.println("the time to load it and to look up, add and remove hashes, for the sqlite and the memory backend.");
+		System.out.println("Add and remove of the memory backend sync the log if TxStateLogSync is set (default).");
+		System.out.println("Usage: TxStateBenchmark -h | [<Entries> [<Operations> [<Backend>]]]");
+		System.out.println("-h : display help");
+		System.out.println("<Entries> : number of hashes in the table (default 10000000)");
+		System.out.println("<Operations> : number of lookups, adds and removes measured (default 10000)");
+		System.out.println("<Backend> : sqlite, memory or both (default both)");
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 1 && args[0].equals("-h")) {
+			showUsage();
+			System.exit(0);
+		}
+
+		long entries = 10000000;
+		int operations = 10000;
+		String backend = "both";
+		try {
+			if (args.length > 0)
+				entries = Long.valueOf(args[0]);
+			if (args.length > 1)
+				operations = Integer.valueOf(args[1]);
+			if (args.length > 2)
+				backend = args[2];
+		} catch (NumberFormatException e) {
+			System.out.println("TxStateBenchmark: One or more arguments are in invalid format. See usage below.\n");
+			showUsage();
+			System.exit(1);
+		}
+
+		System.out.println("Entries: " + entries + ", Operations: " + operations + ", Hash: " + GlobalConfig.INSTANCE.HASH_ALOGITHM + ", Log sync: " + GlobalConfig.INSTANCE.TX_STATE_LOG_SYNC);
+		if (backend.equalsIgnoreCase("sqlite") || backend.equalsIgnoreCase("both"))
+			run("sqlite", entries, operations);
+		if (backend.equalsIgnoreCase("memory") || backend.equalsIgnoreCase("both"))
+			run("memory", entries, operations);
+	}
+
+	private static void run(String backend, long entries, int operations) throws IOException {
+		File directory = Files.createTempDirectory("txstatebenchmark").toFile();
+		try {
+			long startTime = System.nanoTime();
+			if (backend.equals("sqlite"))
+				fillSQLite(directory, entries);
+			else
+				fillMemory(directory, entries);
+			System.out.println(backend + ": filled in " + (System.nanoTime() - startTime) / 1000000 + "ms, " + getSize(directory) / (1024 * 1024) + "MB on disk");
+
+			startTime = System.nanoTime();
+			TxHashStore store = open(backend, directory);
+			System.out.println(backend + ": loaded in " + (System.nanoTime() - startTime) / 1000000 + "ms");
+
+			// hashes are computed upfront, only the table is measured
+			Random random = new Random(42);
+			byte[][] stored = new byte[operations][];
+			byte[][] added = new byte[operations][];
+			for (int i = 0; i < operations; i++) {
+				stored[i] = getHash(Math.floorMod(random.nextLong(), entries));
+				added[i] = getHash(entries + i);
+			}
+			print(backend + " contains (hit)", operations, i -> store.contains(stored[i]));
+			print(backend + " contains (miss)", operations, i -> store.contains(added[i]));
+			print(backend + " add", operations, i -> store.add(added[i]));
+			print(backend + " remove", operations, i -> store.remove(added[i]));
+			store.close();
+		} finally {
+			for (File f : directory.listFiles())
+				f.delete();
+			directory.delete();
+		}
+	}
+
+	private static TxHashStore open(String backend, File directory) {
+		if (backend.equals("sqlite"))
+			return new SQLiteTxHashStore(directory);
+		return new OffHeapTxHashStore(directory);
+	}
+
+	// one INSERT per hash would commit (and sync) every hash, the table of SQLiteTxHashStore is filled in batches instead
+	private static void fillSQLite(File directory, long entries) throws IOException {
+		new SQLiteTxHashStore(directory).close(); // creates the table
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + new File(directory, "transactionstates.db").getPath())) {
+			connection.setAutoCommit(false);
+			try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO 'txstates' (hash) VALUES (?)")) {
+				for (long i = 0; i < entries; i++) {
+					stmt.setString(1, Base64Converter.encodeFromByteArray(getHash(i)));
+					stmt.addBatch();
+					if ((i + 1) % BATCH_SIZE == 0 || i == entries - 1) {
+						stmt.executeBatch();
+						connection.commit();
+					}
+				}
+			}
+			try (Statement stmt = connection.createStatement()) {
+				connection.setAutoCommit(true);
+				stmt.execute("VACUUM");
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	// the log is neither synced nor folded into snapshots while filling, closing the table writes one snapshot
+	private static void fillMemory(File directory, long entries) {
+		boolean logSync = GlobalConfig.INSTANCE.TX_STATE_LOG_SYNC;
+		long snapshotInterval = GlobalConfig.INSTANCE.TX_STATE_SNAPSHOT_INTERVAL;
+		GlobalConfig.INSTANCE.TX_STATE_LOG_SYNC = false;
+		GlobalConfig.INSTANCE.TX_STATE_SNAPSHOT_INTERVAL = Long.MAX_VALUE;
+		try {
+			OffHeapTxHashStore store = new OffHeapTxHashStore(directory);
+			for (long i = 0; i < entries; i++)
+				store.add(getHash(i));
+			store.close();
+			new File(directory, "transactionstates.log").delete(); // contained in the snapshot
+		} finally {
+			GlobalConfig.INSTANCE.TX_STATE_LOG_SYNC = logSync;
+			GlobalConfig.INSTANCE.TX_STATE_SNAPSHOT_INTERVAL = snapshotInterval;
+		}
+	}
+
+	// hash of the i-th Tx, has the size of Tx hashes of the configured algorithm
+	private static byte[] getHash(long i) {
+		try {
+			return MessageDigest.getInstance(GlobalConfig.INSTANCE.HASH_ALOGITHM).digest(ByteBuffer.allocate(8).putLong(i).array());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long getSize(File directory) {
+		long size = 0;
+		for (File f : directory.listFiles())
+			size += f.length();
+		return size;
+	}
+
+	// prints the average time of a single operation in microseconds
+	private static void print(String name, int operations, Operation operation) {
+		long startTime = System.nanoTime();
+		for (int i = 0; i < operations; i++)
+			operation.run(i);
+		System.out.println(name + ": " + (System.nanoTime() - startTime) / 1000 / operations + "us");
+	}
+}
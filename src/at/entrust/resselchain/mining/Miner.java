@@ -16,21 +16,20 @@ import java.security.SignatureException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import at.entrust.resselchain.chain.Block;
-import at.entrust.resselchain.chain.OutgoingMessageSerializer;
-import at.entrust.resselchain.chain.Participant;
 import at.entrust.resselchain.chain.Transaction;
 import at.entrust.resselchain.chain.UtilityTransaction;
-import at.entrust.resselchain.communication.NewClient;
+import at.entrust.resselchain.communication.Gossip;
 import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.config.NodeNotInitializedException;
 import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.state.ChainState;
-import at.entrust.resselchain.statetable.AtomicTransactionException;
 import at.entrust.resselchain.statetable.AssetStateTable;
+import at.entrust.resselchain.statetable.ParallelAssetProcessor;
 import at.entrust.resselchain.utils.Sign;
 
 public class Miner implements Runnable {
@@ -76,14 +75,8 @@ public class Miner implements Runnable {
 						if (appended == false)
 							continue; // do not propagate unappendable blocks
 
-						// send new block to all known participants
-						//Client client = null;
-						ArrayList<Participant> participants = ChainState.INSTANCE.getAllOtherParticipants();
-						String serializedBlock = new OutgoingMessageSerializer().serializeBlockToString(block);
-						for (Participant p : participants) {
-							Logger.STD.logImportant("Send block to " + p.getName());
-							NewClient.INSTANCE.sendMessage(p.getAddress(), p.getPort(), serializedBlock);
-						}
+						// send new block to all known participants (flood) or a random fan-out (gossip)
+						Gossip.INSTANCE.broadcastBlock(block, GlobalConfig.INSTANCE.GOSSIP_TTL);
 					}
 				}
 			} catch (InterruptedException e) {
@@ -96,13 +89,11 @@ public class Miner implements Runnable {
 				e.printStackTrace();
 			} catch (NodeNotInitializedException e) {
 				e.printStackTrace();
-			} catch (AtomicTransactionException e) {
-				e.printStackTrace();
 			}
 		}
 	}
 
-	public Block mineBlock() throws NodeNotInitializedException, InvalidKeyException, NoSuchAlgorithmException, SignatureException, AtomicTransactionException {
+	public Block mineBlock() throws NodeNotInitializedException, InvalidKeyException, NoSuchAlgorithmException, SignatureException {
 
 		// check node configuration
 		PrivateKey sk = GlobalConfig.INSTANCE.PARTICIPANT_CONFIG.getPrivateKey();
@@ -131,11 +122,18 @@ public class Miner implements Runnable {
 		ArrayList<Transaction> tmpTx = new ArrayList<>();
 		
 		Logger.FULL.log("Mining thread fetched " + transactions.size() + " Tx for mining");
-		// check if transaction is valid: call processMultipleTransactions in AssetStateTable and check return value is successful, if successful, revert transactions and mine block (once mined, transactions are written to the AssetStateTable upon appendBlock call)
+		// check if transaction is valid: dry run the Tx on an overlay of the AssetStateTable, the table itself is not changed (once mined, transactions are written to the AssetStateTable upon appendBlock call)
 		// if a transaction is invalid, remove from list of unconfirmed Tx -> happens when block is appended
 		boolean isUtilityTxBlock = false;
-		HashMap<String, ArrayList<Transaction>> tableList = new HashMap<>();
+		ArrayList<Transaction> assetTx = new ArrayList<>();
 		for (Transaction t : transactions) {
+			// Tx encoding has to match the height of the new block
+			if (!Block.isTxVersionAllowed(t, blockNumber)) {
+				if (t.getVersion() < Transaction.BINARY_VERSION)
+					ChainState.INSTANCE.removeUnconfirmedTransaction(t); // legacy Tx can never be mined after activation
+				continue; // binary Tx received before activation stay in the pool
+			}
+
 			if (t instanceof UtilityTransaction) {
 				// append utility transactions immediately
 				tmpTx.add(t);
@@ -145,24 +143,28 @@ public class Miner implements Runnable {
 
 			if (isUtilityTxBlock) continue;
 
-			String assetName = t.getAssetName();
-			if (!tableList.containsKey(assetName))
-				tableList.put(assetName, new ArrayList<>());
-
-			tableList.get(assetName).add(t);
+			assetTx.add(t);
 		}
 
 		if (!isUtilityTxBlock) {
+			// assets are independent of each other, dry run them in parallel
+			LinkedHashMap<String, ArrayList<Transaction>> tableList = ParallelAssetProcessor.partition(assetTx);
+			HashMap<String, AssetStateTable> stateTables = new HashMap<>();
 			for (String assetName : tableList.keySet()) {
 				AssetStateTable stateTable = ChainState.INSTANCE.getAssetStateTable(assetName);
-				ArrayList<Transaction> invalidTx = stateTable.processMultipleTransactions(tableList.get(assetName));
-				if(invalidTx.size() == 0) {
-					for (Transaction tx : tableList.get(assetName)) {
-						stateTable.revertTransaction(tx);
-						tmpTx.add(tx); // Tx is valid, add for mining
-					}
+				if (stateTable != null) // asset not created yet, keep Tx in pool
+					stateTables.put(assetName, stateTable);
+			}
+
+			LinkedHashMap<String, Transaction> invalidTxs = ParallelAssetProcessor.INSTANCE.dryRunPartitions(tableList, stateTables);
+			for (String assetName : tableList.keySet()) {
+				if (!stateTables.containsKey(assetName))
+					continue;
+				Transaction invalidTx = invalidTxs.get(assetName);
+				if (invalidTx == null) {
+					tmpTx.addAll(tableList.get(assetName)); // Tx are valid, add for mining
 				} else {
-					ChainState.INSTANCE.removeUnconfirmedTransaction(invalidTx.get(0)); // remove first invalid Tx from list of unconfirmed Tx
+					ChainState.INSTANCE.removeUnconfirmedTransaction(invalidTx); // remove first invalid Tx from list of unconfirmed Tx
 				}
 			}
 		}
@@ -182,6 +184,10 @@ public class Miner implements Runnable {
 		long nonce = new Random().nextLong();
 
 		Block b = new Block(System.currentTimeMillis(), blockNumber, nonce, miner, difficulty, previousBlockhash);
+		if (blockNumber >= GlobalConfig.INSTANCE.BINARY_ENCODING_ACTIVATION_HEIGHT)
+			b.setVersion(Block.BINARY_VERSION);
+		else
+			b.setVersion(Math.min(GlobalConfig.INSTANCE.BLOCK_VERSION, Block.MERKLE_VERSION));
 		for (Transaction tx : tmpTx) {
 			b.addTransaction(tx);
 		}
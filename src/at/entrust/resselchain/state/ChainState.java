@@ -21,6 +21,7 @@ import at.entrust.resselchain.communication.SyncClient;
 import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.statetable.AssetStateTable;
+import at.entrust.resselchain.statetable.ParallelAssetProcessor;
 import at.entrust.resselchain.statetable.TxStateTable;
 import at.entrust.resselchain.tree.InvalidBlockOrderException;
 import at.entrust.resselchain.tree.Tree;
@@ -41,6 +42,12 @@ public enum ChainState {
 
 	private long lastResetTime = System.currentTimeMillis();
 
+	// changes to the Tx states and the pool of unconfirmed Tx while processing an append, undone if the block is rejected
+	private final ArrayList<Transaction> addedTxStates = new ArrayList<>();
+	private final ArrayList<Transaction> removedTxStates = new ArrayList<>();
+	private final ArrayList<Transaction> addedUnconfirmedTx = new ArrayList<>();
+	private final ArrayList<Transaction> removedUnconfirmedTx = new ArrayList<>();
+
 	
 	public AssetStateTable getAssetStateTable(String assetName) {
 		return assetStates.get(assetName);
@@ -168,6 +175,11 @@ public enum ChainState {
 		return tmp;
 	}
 	
+	// copy of all unconfirmed Tx, the pool is not changed
+	public ArrayList<Transaction> getAllUnconfirmedTransactions() {
+		return new ArrayList<>(unconfirmedTransactions);
+	}
+
 	public boolean existsUnconfirmedTransaction(Transaction tx) {
 		return unconfirmedTransactions.contains(tx);
 	}
@@ -210,6 +222,7 @@ public enum ChainState {
 
 	public boolean appendBlock(Block block){
 		synchronized (blockchain) {
+			long startTime = System.nanoTime();
 			try {
 				// get previous last block
 				Block lastBlockInPreviousLongestChain = getLastBlock();
@@ -222,7 +235,7 @@ public enum ChainState {
 				if (lastBlockInPreviousLongestChain != null) //null is genesis block
 					processTransactions(lastBlockInPreviousLongestChain, lastBlockInCurrentLongestChain);
 
-				Logger.STD.log("Block added: Block# " + block.getBlockNumber() + ", Timestamp " + new SimpleDateFormat("HH:mm:ss").format(block.getTimestamp()));
+				Logger.STD.log("Block added: Block# " + block.getBlockNumber() + ", Timestamp " + new SimpleDateFormat("HH:mm:ss").format(block.getTimestamp()) + ", Append time " + (System.nanoTime() - startTime) / 1000 + "us");
 				return true;
 			} catch (InvalidBlockOrderException e) {
 				// something went wrong when inserting this block, reverse
@@ -336,9 +349,17 @@ public enum ChainState {
 
 		Logger.FULL.log("Append operation requires " + txsOldBlock.size() + " Tx to revert and " + txsNewBlock.size() + " Tx to process before appending new block");
 
-		processTxToRevert(txsOldBlock, txsNewBlock);
+		boolean isValid;
+		try {
+			processTxToRevert(txsOldBlock, txsNewBlock);
+			isValid = processTxToProcess(txsNewBlock);
+		} catch (IllegalStateException e) {
+			// e.g. the tx state log could not be written
+			Logger.ERR.log("Updating Tx states failed: " + e.getMessage() + ". Block is discarded.");
+			isValid = false;
+		}
 
-		if (!processTxToProcess(txsNewBlock)) {
+		if (!isValid) {
 			restoreProcessTransaction();
 			throw new InvalidBlockOrderException();
 		}
@@ -354,6 +375,10 @@ public enum ChainState {
 	
 	private void backupProcessTransaction(){
 		AssetStateTable.backupTable();
+		addedTxStates.clear();
+		removedTxStates.clear();
+		addedUnconfirmedTx.clear();
+		removedUnconfirmedTx.clear();
 	}
 
 	private void restoreProcessTransaction(){
@@ -362,9 +387,75 @@ public enum ChainState {
 		assetStates.clear();
 		for (String s : tables.keySet())
 			addAssetStateTable(s, tables.get(s));
+
+		// additions are undone first, a Tx of both branches is removed and added again
+		for (Transaction tx : addedTxStates)
+			txStates.removeTx(tx);
+		for (Transaction tx : removedTxStates)
+			txStates.addTx(tx);
+		for (Transaction tx : addedUnconfirmedTx)
+			unconfirmedTransactions.remove(tx);
+		for (Transaction tx : removedUnconfirmedTx)
+			unconfirmedTransactions.add(tx);
+		Logger.FULL.log("Restored " + addedTxStates.size() + " added and " + removedTxStates.size() + " removed Tx states");
+	}
+
+	private void addProcessedTx(Transaction tx) {
+		txStates.addTx(tx);
+		addedTxStates.add(tx);
+		if (unconfirmedTransactions.remove(tx))
+			removedUnconfirmedTx.add(tx);
+	}
+
+	private void removeRevertedTx(Transaction tx, boolean isUnconfirmed) {
+		if (isUnconfirmed) {
+			unconfirmedTransactions.add(tx);
+			addedUnconfirmedTx.add(tx);
+		}
+		txStates.removeTx(tx);
+		removedTxStates.add(tx);
 	}
 
 	public boolean processTxToProcess(ArrayList<Transaction> txToProcess) {
+		for (Transaction tx : txToProcess) {
+			// utility Tx create tables that later Tx of the same block may depend on
+			if (tx instanceof UtilityTransaction)
+				return processTxSequentially(txToProcess);
+		}
+
+		// asset and duplicate checks do not depend on balances and are done upfront
+		HashSet<Transaction> blockTx = new HashSet<>();
+		for (Transaction tx : txToProcess) {
+			String assetName = tx.getAssetName();
+			if (!assetStates.containsKey(assetName)) {
+				Logger.STD.log("Invalid asset Name: " + assetName + ". Block is discarded.");
+				return false;
+			}
+			if (!blockTx.add(tx) || txStates.containsTx(tx)) {
+				Logger.STD.log("Tx already in chain (Sender: " + tx.getSender() + ", Receiver: " + tx.getReceiver() + ", AssetName: " + tx.getAssetName() +  ", Amount: " + tx.getAmount() + ". Block is discarded.");
+				return false;
+			}
+		}
+
+		Transaction invalidTx;
+		try {
+			invalidTx = ParallelAssetProcessor.INSTANCE.processPartitions(ParallelAssetProcessor.partition(txToProcess), assetStates);
+		} catch (IllegalStateException e) {
+			// the tables have been rolled back, the block is rejected like a block with an invalid Tx
+			Logger.ERR.log("Processing Tx failed: " + e.getMessage() + ". Block is discarded.");
+			return false;
+		}
+		if (invalidTx != null) {
+			Logger.STD.log("Invalid Tx (Sender: " + invalidTx.getSender() + ", Receiver: " + invalidTx.getReceiver() + ", AssetName: " + invalidTx.getAssetName() +  ", Amount: " + invalidTx.getAmount() + "). Block is discarded.");
+			return false;
+		}
+
+		for (Transaction tx : txToProcess)
+			addProcessedTx(tx);
+		return true;
+	}
+
+	private boolean processTxSequentially(ArrayList<Transaction> txToProcess) {
 		for(Transaction tx : txToProcess) {
 			String assetName = tx.getAssetName();
 			if (!(tx instanceof UtilityTransaction)) {
@@ -374,8 +465,9 @@ public enum ChainState {
 					return false;
 				} else {
 					AssetStateTable table = getAssetStateTable(assetName);
-					if (table != null) {
-						table.processTransaction(tx);
+					if (table != null && !table.processTransaction(tx)) {
+						Logger.STD.log("Invalid Tx (Sender: " + tx.getSender() + ", Receiver: " + tx.getReceiver() + ", AssetName: " + tx.getAssetName() +  ", Amount: " + tx.getAmount() + "). Block is discarded.");
+						return false;
 					}
 				}
 				// check if Tx already in chain
@@ -383,8 +475,7 @@ public enum ChainState {
 					Logger.STD.log("Tx already in chain (Sender: " + tx.getSender() + ", Receiver: " + tx.getReceiver() + ", AssetName: " + tx.getAssetName() +  ", Amount: " + tx.getAmount() + ". Block is discarded.");
 					return false;
 				}else {
-					txStates.addTx(tx);
-					unconfirmedTransactions.remove(tx);
+					addProcessedTx(tx);
 				}
 			} else {
 				UtilityTransaction utx = (UtilityTransaction)tx;
@@ -412,10 +503,7 @@ public enum ChainState {
 			}
 
 			// add Tx that are reverted, but not in he to process list to pool of unconfirmed Tx
-			if (!txToProcess.contains(tx))
-				unconfirmedTransactions.add(tx);
-
-			txStates.removeTx(tx);
+			removeRevertedTx(tx, !txToProcess.contains(tx));
 		}
 
 		/*
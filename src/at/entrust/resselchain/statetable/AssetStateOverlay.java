@@ -0,0 +1,79 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import at.entrust.resselchain.chain.Transaction;
+
+/* Scratch view on an AssetStateTable: balances are read from the table,
+ * changes are only kept in this overlay until they are committed or dropped with it. */
+public class AssetStateOverlay {
+
+	private final AssetStateTable table;
+	private final long baseModifications;
+	private final HashMap<String, Integer> changedBalances = new HashMap<>();
+	private final ArrayList<Transaction> processed = new ArrayList<>();
+	private boolean committed = false;
+
+	AssetStateOverlay(AssetStateTable table) {
+		this.table = table;
+		this.baseModifications = table.getModifications();
+	}
+
+	public int getBalance(String participantName) {
+		Integer balance = changedBalances.get(participantName);
+		return (balance == null) ? table.getBalance(participantName) : balance;
+	}
+
+	public boolean processTransaction(Transaction tx) {
+		if (committed)
+			throw new IllegalStateException("Overlay has already been committed.");
+		if (!table.isValid(tx, tx.getSender(), getBalance(tx.getSender())))
+			return false;
+		changedBalances.put(tx.getSender(), getBalance(tx.getSender()) - tx.getAmount());
+		changedBalances.put(tx.getReceiver(), getBalance(tx.getReceiver()) + tx.getAmount());
+		processed.add(tx);
+		return true;
+	}
+
+	// returns the first invalid Tx or an empty list if all Tx are valid
+	public ArrayList<Transaction> processMultipleTransactions(ArrayList<Transaction> txs) {
+		ArrayList<Transaction> invalidTx = new ArrayList<>();
+		for (Transaction tx : txs) {
+			if (!processTransaction(tx)) {
+				invalidTx.add(tx);
+				break;
+			}
+		}
+		return invalidTx;
+	}
+
+	// Tx successfully processed in this overlay, in order
+	public ArrayList<Transaction> getTransactions() {
+		return processed;
+	}
+
+	public AssetStateTable getTable() {
+		return table;
+	}
+
+	// writes all processed Tx to the table at once, Tx are validated again if the table has changed meanwhile
+	// returns null on success or the first Tx that is invalid, in this case the table is not changed
+	public Transaction commit() {
+		if (committed)
+			throw new IllegalStateException("Overlay has already been committed.");
+		committed = true;
+		return table.commit(this);
+	}
+
+	long getBaseModifications() {
+		return baseModifications;
+	}
+}
@@ -17,83 +17,286 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 import at.entrust.resselchain.chain.Transaction;
 import at.entrust.resselchain.logging.Logger;
 import at.entrust.resselchain.state.ChainState;
+import at.entrust.resselchain.utils.TimeSlots;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 public class AssetStateTable {
 
-	// holds a MySQL database for this table
+	// Reference implementation: balances are held in memory and every change is recorded in a journal.
+	// A snapshot is a position in the journal, a rollback only undoes the changes recorded after it.
+	// Replace the in-memory balances with your own storage (e.g. a database) if needed.
+
+	// all tables known to this node and the tables at the time of the last backup
+	private static final LinkedHashMap<String, AssetStateTable> tables = new LinkedHashMap<>();
+	private static LinkedHashMap<String, AssetStateTable> backupTables = null;
 
 	private String assetName;
 	private ArrayList<String> assetParticipants = new ArrayList<>();
+	private HashMap<String, Integer> balances = new HashMap<>();
+	private ArrayList<JournalEntry> journal = new ArrayList<>();
+	private BalanceHistory history;
+	private long modifications = 0; // number of balance changes, tells overlays whether their reads are still current
 
 	private Connection connection = null;
 
+	private static class JournalEntry {
+		final Transaction tx;
+		final boolean processed; // false if the Tx has been reverted
 
-	public AssetStateTable(String assetName, ArrayList<String> participantNames, HashMap<String, Integer> participantNameShares) {
+		JournalEntry(Transaction tx, boolean processed) {
+			this.tx = tx;
+			this.processed = processed;
+		}
+	}
 
+
+	public AssetStateTable(String assetName, ArrayList<String> participantNames, HashMap<String, Integer> participantNameShares) {
+		this.assetName = assetName;
+		this.assetParticipants.addAll(participantNames);
+		for (String name : participantNames) {
+			Integer share = participantNameShares.get(name);
+			balances.put(name, (share == null) ? 0 : share);
+		}
+		history = new BalanceHistory(balances);
+		synchronized (tables) {
+			tables.put(assetName, this);
+		}
 	}
 
 
-	public boolean revertTransaction(Transaction tx) {
-		//TODO: implement your own logic to revert a transaction
+	public synchronized boolean revertTransaction(Transaction tx) {
 		// If revert process is valid return true, if not return false
+		if (!isValid(tx, tx.getReceiver(), getBalance(tx.getReceiver())))
+			return false;
+		unapply(tx);
+		journal.add(new JournalEntry(tx, false));
 		return true;
 	}
 
-	public boolean processTransaction(Transaction tx) {
-		//TODO: implement your own logic to process a transaction
+	public synchronized boolean processTransaction(Transaction tx) {
 		// If transaction is valid return true, if not return false
-		return false;
+		if (!isValid(tx, tx.getSender(), getBalance(tx.getSender())))
+			return false;
+		apply(tx);
+		journal.add(new JournalEntry(tx, true));
+		return true;
+	}
+
+	// Processes the Tx of a block with a parallel precheck, the result is identical to processTransaction in Tx order.
+	// All Tx are checked in parallel (isValid) against the balances before the block, recording the sender
+	// balance each check has read. Tx are then applied sequentially in order, the check is only repeated
+	// for a Tx whose sender balance has been changed by an earlier Tx of the block.
+	// returns null if all Tx are valid or the first invalid Tx, in this case the table is not changed
+	public synchronized Transaction processTransactionsWithPrecheck(List<Transaction> txs, ForkJoinPool pool) {
+		int n = txs.size();
+		boolean[] valid = new boolean[n];
+		int[] readBalances = new int[n];
+
+		// workers must not call synchronized methods, this thread holds the lock while waiting for them
+		ForkJoinTask<?> precheck = ForkJoinTask.adapt(() -> IntStream.range(0, n).parallel().forEach(i -> {
+			Transaction tx = txs.get(i);
+			readBalances[i] = balanceOf(tx.getSender());
+			valid[i] = isValid(tx, tx.getSender(), readBalances[i]);
+		}));
+		if (ForkJoinTask.getPool() == pool)
+			precheck.invoke();
+		else
+			pool.invoke(precheck);
+
+		int version = snapshot();
+		int rechecked = 0;
+		for (int i = 0; i < n; i++) {
+			Transaction tx = txs.get(i);
+			int balance = balanceOf(tx.getSender());
+			boolean isValid = valid[i];
+			if (balance != readBalances[i]) {
+				isValid = isValid(tx, tx.getSender(), balance);
+				rechecked++;
+			}
+			if (!isValid) {
+				rollback(version);
+				return tx;
+			}
+			apply(tx);
+			journal.add(new JournalEntry(tx, true));
+		}
+		Logger.FULL.log("Parallel precheck of " + n + " Tx of asset " + assetName + ", " + rechecked + " Tx checked again");
+		return null;
+	}
+
+	// checks a transfer of this asset from payer, who currently holds the given balance
+	boolean isValid(Transaction tx, String payer, int payerBalance) {
+		if (!assetName.equals(tx.getAssetName()))
+			return false;
+		if (!assetParticipants.contains(tx.getSender()) || !assetParticipants.contains(tx.getReceiver()))
+			return false;
+		if (tx.getAmount() <= 0)
+			return false;
+		return payerBalance >= tx.getAmount();
+	}
+
+	private void apply(Transaction tx) {
+		transfer(tx.getSender(), tx.getReceiver(), tx.getAmount());
+		history.add(tx);
+		modifications++;
+	}
+
+	private void unapply(Transaction tx) {
+		transfer(tx.getReceiver(), tx.getSender(), tx.getAmount());
+		history.remove(tx);
+		modifications++;
+	}
+
+	synchronized long getModifications() {
+		return modifications;
+	}
+
+	private void transfer(String from, String to, int amount) {
+		balances.put(from, getBalance(from) - amount);
+		balances.put(to, getBalance(to) + amount);
+	}
+
+	public synchronized int getBalance(String participantName) {
+		return balanceOf(participantName);
+	}
+
+	private int balanceOf(String participantName) {
+		Integer balance = balances.get(participantName);
+		return (balance == null) ? 0 : balance;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	// returns a version that can be passed to rollback, O(1)
+	public synchronized int snapshot() {
+		return journal.size();
+	}
+
+	// undoes all changes after the given version, O(number of changes)
+	public synchronized void rollback(int version) {
+		for (int i = journal.size() - 1; i >= version; i--) {
+			JournalEntry entry = journal.get(i);
+			if (entry.processed)
+				unapply(entry.tx);
+			else
+				apply(entry.tx);
+		}
+		journal.subList(version, journal.size()).clear();
+	}
+
+	// starts a new journal, older versions cannot be rolled back to afterwards
+	private synchronized void resetJournal() {
+		journal = new ArrayList<>();
+	}
+
+	// scratch view on this table, changes are only written to the table by commit
+	public AssetStateOverlay createOverlay() {
+		return new AssetStateOverlay(this);
+	}
+
+	// writes the Tx processed in the overlay to this table, all or nothing
+	// returns null on success or the first Tx that is invalid against the current balances
+	synchronized Transaction commit(AssetStateOverlay overlay) {
+		if (overlay.getBaseModifications() == modifications) {
+			// table unchanged since the overlay has been created, its validation still holds
+			for (Transaction tx : overlay.getTransactions()) {
+				apply(tx);
+				journal.add(new JournalEntry(tx, true));
+			}
+			return null;
+		}
+
+		int version = snapshot();
+		for (Transaction tx : overlay.getTransactions()) {
+			if (!processTransaction(tx)) {
+				rollback(version);
+				return tx;
+			}
+		}
+		return null;
+	}
+
+	// validates Tx without changing this table
+	// returns the first invalid Tx or an empty list if all Tx are valid
+	public ArrayList<Transaction> dryRun(ArrayList<Transaction> txs) {
+		return createOverlay().processMultipleTransactions(txs);
 	}
 
 	public static void restoreBackup() {
-		//TODO: implement your own backup restore
+		synchronized (tables) {
+			if (backupTables == null)
+				return;
+			for (AssetStateTable table : backupTables.values())
+				table.rollback(0);
+			// drop tables that have been created after the backup
+			tables.clear();
+			tables.putAll(backupTables);
+		}
 	}
 
 	public static HashMap<String, AssetStateTable> createStateFromStorage() {
-		//TODO: implement your own backup restore
 		// The hashmap consists of the asset name and an assetstatetable where the distribution is stored
-		return new HashMap<String, AssetStateTable>();
+		synchronized (tables) {
+			return new HashMap<String, AssetStateTable>(tables);
+		}
 	}
 
 	public static void backupTable() {
-		//TODO: implement a backup mechanism to backup the current state
+		// a backup only remembers the current tables and starts new journals, no data is copied
+		synchronized (tables) {
+			backupTables = new LinkedHashMap<>(tables);
+			for (AssetStateTable table : tables.values())
+				table.resetJournal();
+		}
 	}
 
-    public HashMap<String, Integer> getAssets(long date) {
+	// asset distribution at the end of the given day (days since epoch, local time)
+	public HashMap<String, Integer> getAssets(long date) {
+		return getAssets(date, TimeSlots.getSlotsPerDay(date));
+	}
 
-		//TODO: return the asset distribution at a given timestamp
-		return new HashMap<String, Integer>();
+	// asset distribution at the beginning of the given quarter-hour slot of a day (days since epoch, in TimeZone)
+	// slot may range from 0 to the number of slots of this day, which differs on days with a daylight saving time change
+	public synchronized HashMap<String, Integer> getAssets(long date, int slot) {
+		if (slot < 0 || slot > TimeSlots.getSlotsPerDay(date))
+			throw new IllegalArgumentException("Invalid slot " + slot + " for day " + date);
+		long dayStart = TimeSlots.getStartOfDay(date);
+		long timestamp = dayStart + slot * BalanceHistory.SLOT_MILISECONDS;
+		return history.getBalancesAtSlot(BalanceHistory.getSlot(timestamp));
 	}
 
 
+	// Tx are validated on an overlay and only committed if all of them are valid, the table is never reverted
+	// AtomicTransactionException is no longer thrown and only kept for existing callers
 	public ArrayList<Transaction> processMultipleTransactions(ArrayList<Transaction> txs) throws AtomicTransactionException {
+		long startTime = System.nanoTime();
 
-		ArrayList<Transaction> invalidTx = new ArrayList<>();
-		int i = 0;
-		while (i < txs.size() && processTransaction(txs.get(i)))
-			i++;
-		if (i >= txs.size())
-			return invalidTx; // returns empty list if all Tx are valid
-		else
-		{
-			Logger.FULL.log("Failed trying to process " + txs.size() + " Tx, failed at index " + i);
-			invalidTx.add(txs.get(i)); // returns the first Tx that is invalid
-
-			i--; // do not revert last transaction since it failed
-			while (i >= 0 && revertTransaction(txs.get(i)))
-				i--;
-			if (i != -1) throw new AtomicTransactionException(); //This should never happen
-
-			return invalidTx;
+		AssetStateOverlay overlay = createOverlay();
+		ArrayList<Transaction> invalidTx = overlay.processMultipleTransactions(txs);
+		if (invalidTx.isEmpty()) {
+			Transaction failedTx = overlay.commit();
+			if (failedTx != null)
+				invalidTx.add(failedTx); // balances changed concurrently
 		}
+
+		if (invalidTx.isEmpty())
+			Logger.FULL.log("Processed " + txs.size() + " Tx in " + (System.nanoTime() - startTime) / 1000 + "us");
+		else
+			Logger.FULL.log("Failed trying to process " + txs.size() + " Tx, failed at index " + txs.indexOf(invalidTx.get(0)) + " after " + (System.nanoTime() - startTime) / 1000 + "us");
+		return invalidTx; // returns empty list if all Tx are valid, the first Tx that is invalid otherwise
 	}
 
 	public static HashMap<String,AssetStateTable> createAssetStateTablesFromMeta() {
-		return new HashMap<>();
+		// balances are not persisted by this reference implementation
+		return createStateFromStorage();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import at.entrust.resselchain.chain.Transaction;
+
+/* Balances of one asset over time. Tx are indexed by the quarter-hour slot of their timestamp
+ * (slot 0 starts at the epoch). A checkpoint holds all balances before its slot and exists for
+ * every interval of CHECKPOINT_INTERVAL_SLOTS slots that contains Tx, so a query only replays
+ * the Tx of a single interval after an O(log n) checkpoint lookup. */
+public class BalanceHistory {
+
+	public static final long SLOT_MILISECONDS = 15 * 60 * 1000;
+	private static final long CHECKPOINT_INTERVAL_SLOTS = 96;
+
+	private final HashMap<String, Integer> initialBalances;
+	private final TreeMap<Long, ArrayList<Transaction>> deltas = new TreeMap<>();
+	private final TreeMap<Long, HashMap<String, Integer>> checkpoints = new TreeMap<>();
+
+	public BalanceHistory(HashMap<String, Integer> initialBalances) {
+		this.initialBalances = new HashMap<>(initialBalances);
+	}
+
+	public static long getSlot(long timestamp) {
+		return Math.floorDiv(timestamp, SLOT_MILISECONDS);
+	}
+
+	public void add(Transaction tx) {
+		long slot = getSlot(tx.getTimestamp());
+		long checkpointSlot = Math.floorDiv(slot, CHECKPOINT_INTERVAL_SLOTS) * CHECKPOINT_INTERVAL_SLOTS;
+		if (!checkpoints.containsKey(checkpointSlot))
+			checkpoints.put(checkpointSlot, getBalancesAtSlot(checkpointSlot));
+
+		deltas.computeIfAbsent(slot, s -> new ArrayList<>()).add(tx);
+
+		// Tx may arrive late, all later checkpoints include it
+		for (HashMap<String, Integer> checkpoint : checkpoints.tailMap(slot, false).values())
+			apply(checkpoint, tx, 1);
+	}
+
+	public void remove(Transaction tx) {
+		long slot = getSlot(tx.getTimestamp());
+		ArrayList<Transaction> txs = deltas.get(slot);
+		if (txs == null || !txs.remove(tx))
+			return;
+		if (txs.isEmpty())
+			deltas.remove(slot);
+
+		for (HashMap<String, Integer> checkpoint : checkpoints.tailMap(slot, false).values())
+			apply(checkpoint, tx, -1);
+	}
+
+	// balances at the beginning of the given slot, i.e. including all Tx of earlier slots
+	public HashMap<String, Integer> getBalancesAtSlot(long slot) {
+		Map.Entry<Long, HashMap<String, Integer>> checkpoint = checkpoints.floorEntry(slot);
+
+		HashMap<String, Integer> balances;
+		Map<Long, ArrayList<Transaction>> replay;
+		if (checkpoint == null) {
+			balances = new HashMap<>(initialBalances);
+			replay = deltas.headMap(slot, false);
+		} else {
+			balances = new HashMap<>(checkpoint.getValue());
+			replay = deltas.subMap(checkpoint.getKey(), true, slot, false);
+		}
+
+		for (ArrayList<Transaction> txs : replay.values()) {
+			for (Transaction tx : txs)
+				apply(balances, tx, 1);
+		}
+		return balances;
+	}
+
+	private static void apply(HashMap<String, Integer> balances, Transaction tx, int sign) {
+		balances.merge(tx.getSender(), -sign * tx.getAmount(), Integer::sum);
+		balances.merge(tx.getReceiver(), sign * tx.getAmount(), Integer::sum);
+	}
+}
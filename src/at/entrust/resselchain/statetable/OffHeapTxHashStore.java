@@ -0,0 +1,379 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+
+/* Stores raw tx hashes in an off-heap open addressing hash table (linear probing).
+ * Durability is provided by a snapshot of all hashes and an append-only log of changes
+ * since the last snapshot; both are replayed at startup. A change is only kept in memory once
+ * its log record has been written (and synced with TxStateLogSync). If writing the log fails,
+ * the change is undone, IllegalStateException is thrown and all further changes fail, so the
+ * table never differs from the log. */
+public class OffHeapTxHashStore implements TxHashStore {
+
+	private static final String SNAPSHOT_FILE = "transactionstates.snapshot";
+	private static final String LOG_FILE = "transactionstates.log";
+
+	private static final byte SLOT_EMPTY = 0;
+	private static final byte SLOT_USED = 1;
+	private static final byte SLOT_DELETED = 2;
+
+	private static final byte LOG_ADD = 1;
+	private static final byte LOG_REMOVE = 0;
+
+	private static final int MIN_CAPACITY = 1 << 10;
+	private static final double MAX_LOAD = 0.5;
+	// load allowed once the table cannot grow any further
+	private static final double MAX_LOAD_AT_MAX_CAPACITY = 0.9;
+
+	private final int keySize;
+	private final int maxCapacity;
+
+	private ByteBuffer keys; // capacity * keySize bytes
+	private ByteBuffer slots; // one state byte per slot
+	private int capacity;
+	private long size = 0;
+	private long deleted = 0;
+
+	private final File snapshotFile;
+	private final File logFile;
+	private FileOutputStream logOutput = null; // underlying file of log, for sync
+	private DataOutputStream log = null;
+	private long logRecords = 0;
+	private IOException logFailure = null;
+
+	public OffHeapTxHashStore() {
+		this(new File("."));
+	}
+
+	// stores the snapshot and log in the given directory
+	public OffHeapTxHashStore(File directory) {
+		snapshotFile = new File(directory, SNAPSHOT_FILE);
+		logFile = new File(directory, LOG_FILE);
+
+		int digestLength = 32;
+		try {
+			digestLength = MessageDigest.getInstance(GlobalConfig.INSTANCE.HASH_ALOGITHM).getDigestLength();
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+		}
+		keySize = digestLength;
+		maxCapacity = Integer.highestOneBit(Integer.MAX_VALUE / keySize);
+
+		allocate(MIN_CAPACITY);
+		try {
+			load();
+			openLog(true);
+		} catch (IOException e) {
+			Logger.ERR.log("Error loading tx state snapshot or log: " + e.getMessage());
+			Logger.ERR.log("Exiting after failure to load tx states.");
+			System.exit(1);
+		}
+	}
+
+	@Override
+	synchronized public boolean add(byte[] txHash) {
+		checkKey(txHash);
+		checkLog();
+		if (!insert(txHash))
+			return false;
+		try {
+			appendLog(LOG_ADD, txHash);
+		} catch (IOException e) {
+			delete(find(txHash));
+			throw logFailed(e);
+		}
+		return true;
+	}
+
+	@Override
+	synchronized public boolean contains(byte[] txHash) {
+		checkKey(txHash);
+		return find(txHash) != -1;
+	}
+
+	@Override
+	synchronized public boolean remove(byte[] txHash) {
+		checkKey(txHash);
+		checkLog();
+		int slot = find(txHash);
+		if (slot == -1)
+			return false;
+		delete(slot);
+		try {
+			appendLog(LOG_REMOVE, txHash);
+		} catch (IOException e) {
+			insert(txHash);
+			throw logFailed(e);
+		}
+		return true;
+	}
+
+	@Override
+	synchronized public long size() {
+		return size;
+	}
+
+	@Override
+	synchronized public void close() {
+		try {
+			// after a log failure neither the snapshot nor buffered data is written, the log still matches the table
+			if (logFailure != null) {
+				logOutput.close();
+			} else {
+				writeSnapshot();
+				if (log != null)
+					log.close();
+			}
+			log = null;
+		} catch (IOException e) {
+			Logger.ERR.log("Error closing tx state log: " + e.getMessage());
+		}
+	}
+
+	private void checkLog() {
+		if (logFailure != null)
+			throw new IllegalStateException("Tx state log is not writable since an earlier error: " + logFailure.getMessage(), logFailure);
+	}
+
+	private IllegalStateException logFailed(IOException e) {
+		logFailure = e;
+		Logger.ERR.log("Error writing tx state log, no further changes are accepted: " + e.getMessage());
+		return new IllegalStateException("Error writing tx state log: " + e.getMessage(), e);
+	}
+
+	// Hash table
+
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		keys = ByteBuffer.allocateDirect(capacity * keySize);
+		slots = ByteBuffer.allocateDirect(capacity);
+		size = 0;
+		deleted = 0;
+	}
+
+	private void checkKey(byte[] txHash) {
+		if (txHash == null || txHash.length != keySize)
+			throw new IllegalArgumentException("Tx hash must have " + keySize + " bytes.");
+	}
+
+	// keys are hash values, so their first bytes are already uniformly distributed
+	private int startSlot(byte[] key) {
+		long h = 0;
+		for (int i = 0; i < Math.min(8, key.length); i++)
+			h = (h << 8) | (key[i] & 0xFF);
+		return (int) (h & (capacity - 1));
+	}
+
+	private boolean keyEquals(int slot, byte[] key) {
+		int offset = slot * keySize;
+		for (int i = 0; i < keySize; i++) {
+			if (keys.get(offset + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	private void delete(int slot) {
+		slots.put(slot, SLOT_DELETED);
+		size--;
+		deleted++;
+	}
+
+	private int find(byte[] key) {
+		int slot = startSlot(key);
+		for (int probes = 0; probes < capacity; probes++) {
+			byte state = slots.get(slot);
+			if (state == SLOT_EMPTY)
+				return -1;
+			if (state == SLOT_USED && keyEquals(slot, key))
+				return slot;
+			slot = (slot + 1) & (capacity - 1);
+		}
+		return -1;
+	}
+
+	private boolean insert(byte[] key) {
+		if (find(key) != -1)
+			return false;
+
+		if (size + deleted + 1 > capacity * MAX_LOAD)
+			grow();
+
+		int slot = startSlot(key);
+		while (slots.get(slot) == SLOT_USED)
+			slot = (slot + 1) & (capacity - 1);
+
+		if (slots.get(slot) == SLOT_DELETED)
+			deleted--;
+		slots.put(slot, SLOT_USED);
+		int offset = slot * keySize;
+		for (int i = 0; i < keySize; i++)
+			keys.put(offset + i, key[i]);
+		size++;
+		return true;
+	}
+
+	// doubles the capacity (or only drops deleted slots if enough of them exist)
+	private void grow() {
+		int newCapacity = capacity;
+		if (size + 1 > capacity * MAX_LOAD / 2)
+			newCapacity = capacity * 2;
+
+		if (newCapacity > maxCapacity) {
+			if (size + 1 > maxCapacity * MAX_LOAD_AT_MAX_CAPACITY)
+				throw new IllegalStateException("Tx state table is full (" + size + " hashes).");
+			if (deleted == 0)
+				return; // keep filling the table up to the maximum load
+			newCapacity = maxCapacity;
+		}
+
+		ByteBuffer oldKeys = keys;
+		ByteBuffer oldSlots = slots;
+		int oldCapacity = capacity;
+
+		allocate(newCapacity);
+		byte[] key = new byte[keySize];
+		for (int slot = 0; slot < oldCapacity; slot++) {
+			if (oldSlots.get(slot) != SLOT_USED)
+				continue;
+			int offset = slot * keySize;
+			for (int i = 0; i < keySize; i++)
+				key[i] = oldKeys.get(offset + i);
+			insert(key);
+		}
+		Logger.FULL.log("Tx state table resized to " + capacity + " slots for " + size + " hashes");
+	}
+
+	// Persistence
+
+	private void load() throws IOException {
+		if (snapshotFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+				int snapshotKeySize = in.readInt();
+				if (snapshotKeySize != keySize)
+					throw new IOException("Snapshot key size " + snapshotKeySize + " does not match hash algorithm " + GlobalConfig.INSTANCE.HASH_ALOGITHM);
+				long count = in.readLong();
+				while (capacity < maxCapacity && count > capacity * MAX_LOAD / 2)
+					capacity *= 2;
+				allocate(capacity);
+				byte[] key = new byte[keySize];
+				for (long i = 0; i < count; i++) {
+					in.readFully(key);
+					insert(key);
+				}
+			}
+		}
+
+		long replayed = 0;
+		if (logFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+				byte[] key = new byte[keySize];
+				while (true) {
+					byte op;
+					try {
+						op = in.readByte();
+						in.readFully(key);
+					} catch (EOFException e) {
+						break; // last record may be incomplete after a crash
+					}
+					if (op == LOG_ADD) {
+						insert(key);
+					} else {
+						int slot = find(key);
+						if (slot != -1)
+							delete(slot);
+					}
+					replayed++;
+				}
+			}
+		}
+		Logger.FULL.log("Tx state table loaded " + size + " hashes, replayed " + replayed + " log records");
+
+		// fold replayed log into a new snapshot and start with an empty log
+		if (replayed > 0) {
+			writeSnapshot();
+			logFile.delete();
+		}
+	}
+
+	private void openLog(boolean append) throws IOException {
+		logOutput = new FileOutputStream(logFile, append);
+		log = new DataOutputStream(new BufferedOutputStream(logOutput));
+		if (!append)
+			logRecords = 0;
+	}
+
+	// the record is on disk when this returns, a failed snapshot is only logged as the log still has all changes
+	private void appendLog(byte op, byte[] key) throws IOException {
+		long start = logOutput.getChannel().position();
+		try {
+			log.writeByte(op);
+			log.write(key);
+			log.flush();
+			if (GlobalConfig.INSTANCE.TX_STATE_LOG_SYNC)
+				logOutput.getFD().sync();
+		} catch (IOException e) {
+			try {
+				logOutput.getChannel().truncate(start); // drop a partial record
+			} catch (IOException e2) {
+				// an incomplete last record is ignored when the log is replayed
+			}
+			throw e;
+		}
+
+		if (++logRecords >= GlobalConfig.INSTANCE.TX_STATE_SNAPSHOT_INTERVAL) {
+			try {
+				writeSnapshot();
+			} catch (IOException e) {
+				Logger.ERR.log("Error writing tx state snapshot, keeping the log: " + e.getMessage());
+				logRecords = 0; // retried after the next interval
+				return;
+			}
+			log.close();
+			openLog(false); // log is contained in snapshot now
+		}
+	}
+
+	private void writeSnapshot() throws IOException {
+		File tmp = new File(snapshotFile.getPath() + ".tmp");
+		try (FileOutputStream file = new FileOutputStream(tmp, false)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(keySize);
+			out.writeLong(size);
+			for (int slot = 0; slot < capacity; slot++) {
+				if (slots.get(slot) != SLOT_USED)
+					continue;
+				int offset = slot * keySize;
+				for (int i = 0; i < keySize; i++)
+					out.writeByte(keys.get(offset + i));
+			}
+			out.flush();
+			file.getFD().sync(); // the log is truncated after the move
+		}
+		Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Logger.FULL.log("Tx state snapshot written with " + size + " hashes");
+	}
+}
@@ -0,0 +1,133 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import at.entrust.resselchain.chain.Transaction;
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+
+/* Tx of different assets never touch the same AssetStateTable, so the Tx of a block are split
+ * into one partition per asset and the partitions are processed in parallel.
+ * Partitions keep the order in which their asset first occurs in the block, Tx keep their order
+ * within a partition, so results do not depend on scheduling. */
+public enum ParallelAssetProcessor {
+	INSTANCE;
+
+	public static final String SEQUENTIAL_MODE = "sequential";
+	public static final String PRECHECK_MODE = "precheck";
+
+	private final ForkJoinPool pool = new ForkJoinPool(Math.max(1, GlobalConfig.INSTANCE.VALIDATION_THREADS));
+
+	public static LinkedHashMap<String, ArrayList<Transaction>> partition(List<Transaction> txs) {
+		LinkedHashMap<String, ArrayList<Transaction>> partitions = new LinkedHashMap<>();
+		for (Transaction tx : txs)
+			partitions.computeIfAbsent(tx.getAssetName(), a -> new ArrayList<>()).add(tx);
+		return partitions;
+	}
+
+	// applies all partitions to their tables, all or nothing
+	// returns null on success or the first invalid Tx (in partition order), in this case no table is changed
+	public Transaction processPartitions(LinkedHashMap<String, ArrayList<Transaction>> partitions, HashMap<String, AssetStateTable> tables) {
+		LinkedHashMap<AssetStateTable, Integer> versions = new LinkedHashMap<>();
+		ArrayList<Callable<Transaction>> tasks = new ArrayList<>();
+		for (String assetName : partitions.keySet()) {
+			AssetStateTable table = tables.get(assetName);
+			ArrayList<Transaction> txs = partitions.get(assetName);
+			versions.put(table, table.snapshot());
+			tasks.add(() -> {
+				if (GlobalConfig.INSTANCE.ASSET_EXECUTION_MODE.equalsIgnoreCase(PRECHECK_MODE) && txs.size() > 1)
+					return table.processTransactionsWithPrecheck(txs, pool);
+				// invalid partitions never touch their table
+				AssetStateOverlay overlay = table.createOverlay();
+				ArrayList<Transaction> invalidTx = overlay.processMultipleTransactions(txs);
+				if (!invalidTx.isEmpty())
+					return invalidTx.get(0);
+				return overlay.commit();
+			});
+		}
+
+		List<Transaction> results;
+		try {
+			results = invokeAll(tasks);
+		} catch (RuntimeException e) {
+			rollback(versions);
+			throw e;
+		}
+
+		for (Transaction result : results) {
+			if (result != null) {
+				// every partition is reverted, not only the failed ones
+				rollback(versions);
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static void rollback(LinkedHashMap<AssetStateTable, Integer> versions) {
+		for (AssetStateTable table : versions.keySet())
+			table.rollback(versions.get(table));
+	}
+
+	// dry runs all partitions without changing any table, partitions without a table are skipped
+	// returns the first invalid Tx of each partition that contains one
+	public LinkedHashMap<String, Transaction> dryRunPartitions(LinkedHashMap<String, ArrayList<Transaction>> partitions, HashMap<String, AssetStateTable> tables) {
+		ArrayList<String> assetNames = new ArrayList<>();
+		ArrayList<Callable<Transaction>> tasks = new ArrayList<>();
+		for (String assetName : partitions.keySet()) {
+			AssetStateTable table = tables.get(assetName);
+			if (table == null)
+				continue;
+			ArrayList<Transaction> txs = partitions.get(assetName);
+			assetNames.add(assetName);
+			tasks.add(() -> {
+				ArrayList<Transaction> invalidTx = table.dryRun(txs);
+				return invalidTx.isEmpty() ? null : invalidTx.get(0);
+			});
+		}
+
+		LinkedHashMap<String, Transaction> invalidTxs = new LinkedHashMap<>();
+		List<Transaction> results = invokeAll(tasks);
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) != null)
+				invalidTxs.put(assetNames.get(i), results.get(i));
+		}
+		return invalidTxs;
+	}
+
+	// runs the tasks and returns their results in task order, a single task is run on the calling thread
+	private List<Transaction> invokeAll(ArrayList<Callable<Transaction>> tasks) {
+		ArrayList<Transaction> results = new ArrayList<>();
+		try {
+			if (tasks.size() == 1) {
+				results.add(tasks.get(0).call());
+				return results;
+			}
+			for (Future<Transaction> f : pool.invokeAll(tasks))
+				results.add(f.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing Tx partitions.", e);
+		} catch (ExecutionException e) {
+			Logger.ERR.log("Error while processing Tx partitions: " + e.getCause());
+			throw new IllegalStateException(e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+import java.io.File;
+import java.sql.*;
+
+import at.entrust.resselchain.config.GlobalConfig;
+import at.entrust.resselchain.logging.Logger;
+import at.entrust.resselchain.utils.Base64Converter;
+import at.entrust.resselchain.utils.CountingBloomFilter;
+
+/* Stores tx hashes as Base64 text in the SQLite data base transactionstates.db */
+public class SQLiteTxHashStore implements TxHashStore {
+
+	private static final String DATA_BASE_FILE = "transactionstates.db";
+
+	private final File dataBaseFile;
+	private Connection connection = null;
+
+	// most lookups are misses, the filter answers them without querying the data base
+	private CountingBloomFilter filter = null;
+
+	public SQLiteTxHashStore(){
+		this(new File("."));
+	}
+
+	// stores the data base in the given directory
+	public SQLiteTxHashStore(File directory){
+		dataBaseFile = new File(directory, DATA_BASE_FILE);
+		reinitConnection();
+		if(!createTableIfNotExists())
+			System.exit(1);
+		rebuildFilter();
+	}
+
+	@Override
+	synchronized public boolean add(byte[] txHash) {
+		String hash = Base64Converter.encodeFromByteArray(txHash);
+		if (filter.mightContain(txHash) && containsTxHash(hash))
+			return false;
+		if (!addTxHash(hash))
+			return false;
+		filter.add(txHash);
+		if (filter.isOverCapacity())
+			rebuildFilter();
+		return true;
+	}
+
+	@Override
+	synchronized public boolean contains(byte[] txHash) {
+		if (!filter.mightContain(txHash))
+			return false;
+		return containsTxHash(Base64Converter.encodeFromByteArray(txHash));
+	}
+
+	@Override
+	synchronized public boolean remove(byte[] txHash) {
+		if (!filter.mightContain(txHash))
+			return false; // not in table
+		// only remove from filter if the hash has actually been in the table
+		if (!removeTxHash(Base64Converter.encodeFromByteArray(txHash)))
+			return false;
+		filter.remove(txHash);
+		return true;
+	}
+
+	@Override
+	synchronized public long size() {
+		return countTxHashes();
+	}
+
+	//SQL Queries
+	synchronized private String createTableSQLString(){
+		String sql = "CREATE TABLE IF NOT EXISTS 'txstates' " +
+				"(hash TEXT PRIMARY KEY)";
+		return sql;
+	}
+
+	synchronized private String addTxHashSQLString(String hash){
+		String sql = "INSERT INTO 'txstates' (hash) VALUES ('" + hash + "')";
+		return sql;
+	}
+
+	synchronized private String removeTxHashSQLString(String hash){
+		String sql = "DELETE FROM 'txstates' WHERE hash = '" + hash + "'";
+		return sql;
+	}
+
+	synchronized private String getTxHashSQLString(String hash){
+		String sql = "SELECT * FROM 'txstates' WHERE hash = '" + hash  + "'";
+		return sql;
+	}
+
+	synchronized private String countTxHashesSQLString(){
+		String sql = "SELECT COUNT(*) FROM 'txstates'";
+		return sql;
+	}
+
+	synchronized private String getAllTxHashesSQLString(){
+		String sql = "SELECT hash FROM 'txstates'";
+		return sql;
+	}
+	//END SQL Queries
+
+
+	synchronized private boolean createTableIfNotExists() {
+		int ret = executeUpdateQuery(createTableSQLString());
+		if (ret == -1) {
+			Logger.FULL.log("Table for txstates could not be created");
+			return false;
+		}
+		Logger.FULL.log("Table for txstates created successfully");
+		return true;
+	}
+
+	synchronized private boolean addTxHash(String hash){
+		int ret = executeUpdateQuery(addTxHashSQLString(hash));
+		if (ret == -1) {
+			Logger.FULL.log("Hash could not be added to txstates");
+			return false;
+		}
+		Logger.FULL.log("Hash successfully added to txstates");
+		return true;
+	}
+
+	// returns true if a hash has been deleted
+	synchronized private boolean removeTxHash(String hash){
+		int ret = executeUpdateQuery(removeTxHashSQLString(hash));
+		if (ret == -1) {
+			Logger.FULL.log("Hash could not be deleted from txstates");
+			return false;
+		}
+		Logger.FULL.log("Hash successfully removed from txstates");
+		return ret > 0;
+	}
+
+	synchronized private boolean containsTxHash(String hash){
+		ResultSet result = executeSelectQuery(getTxHashSQLString(hash));
+		boolean contains = false;
+		try {
+			contains = result.next();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		try {
+			result.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return contains;
+	}
+
+	synchronized private long countTxHashes(){
+		ResultSet result = executeSelectQuery(countTxHashesSQLString());
+		long count = 0;
+		if (result == null)
+			return count;
+		try {
+			if (result.next())
+				count = result.getLong(1);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		try {
+			result.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return count;
+	}
+
+	// sizes the filter for twice the number of stored hashes and fills it from the data base
+	synchronized private void rebuildFilter() {
+		long count = countTxHashes();
+		CountingBloomFilter newFilter = new CountingBloomFilter(2 * count, GlobalConfig.INSTANCE.TX_FILTER_FALSE_POSITIVE_RATE);
+
+		ResultSet result = executeSelectQuery(getAllTxHashesSQLString());
+		try {
+			if (result == null)
+				throw new SQLException("No result for " + getAllTxHashesSQLString());
+			while (result.next())
+				newFilter.add(Base64Converter.decodeToByteArray(result.getString(1)));
+		} catch (SQLException e) {
+			// never answer from an incomplete filter
+			Logger.ERR.log("Error reading txstates for filter: " + e.getMessage());
+			Logger.ERR.log("Exiting after failure to build tx state filter.");
+			System.exit(1);
+		}
+		try {
+			result.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+
+		filter = newFilter;
+		Logger.FULL.log("Tx state filter built for " + filter.size() + " hashes with capacity " + filter.getCapacity());
+	}
+
+	synchronized private void reinitConnection() {
+		try
+		{
+			if (connection != null && !connection.isClosed())
+				close();
+		}
+		catch ( Exception e ) {
+			connection = null;
+			Logger.ERR.log("Error determining status of SQL connection for tx state table: " + e.getMessage());
+		}
+		try
+		{
+			Class.forName("org.sqlite.JDBC");
+			connection = DriverManager.getConnection("jdbc:sqlite:" + dataBaseFile.getPath());
+		} catch ( Exception e ) {
+			connection = null;
+			Logger.ERR.log("Error opening SQL connection for tx state table: " + e.getMessage());
+			Logger.ERR.log("Exiting after failure to connect to SQL data base.");
+			System.exit(1);
+		}
+	}
+
+	@Override
+	synchronized public void close() {
+		try {
+			if (connection != null)
+				connection.close();
+		} catch (SQLException e) {
+			Logger.ERR.log("Error closing SQL connection for Tx State tables " + e.getMessage());
+		}
+	}
+
+	synchronized private ResultSet executeSelectQuery(String query) //Warning: caller must call ResultSet.close()!
+	{
+		ResultSet ret = null;
+		try
+		{
+			if (!connection.isValid(5))
+				reinitConnection();
+			Statement stmt = connection.createStatement();
+			ret = stmt.executeQuery(query);
+			stmt.closeOnCompletion();
+			//Logger.FULL.log("Executed SQL query %" + query + "% for asset " + assetName);
+			return ret;
+		} catch ( Exception e ) {
+			Logger.ERR.log("Error executing SQL query " + query + ":" + e.getMessage());
+			return null;
+		}
+	}
+
+	synchronized private int executeUpdateQuery(String query)
+	{
+		int ret = -1;
+		try
+		{
+			if (!connection.isValid(5)) //5 second timeout
+				reinitConnection();
+			Statement stmt = connection.createStatement();
+			ret = stmt.executeUpdate(query);
+			stmt.close();
+			//Logger.FULL.log("Executed SQL update %" + query + "% for asset " + assetName);
+		} catch ( Exception e ) {
+			ret = -1;
+			Logger.ERR.log("Error executing SQL update %" + query + ": " + e.getMessage());
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,19 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.statetable;
+
+/* Set of hashes of all confirmed transactions, backend of TxStateTable */
+public interface TxHashStore {
+	// returns true if the hash has not been stored before
+	boolean add(byte[] txHash);
+	boolean contains(byte[] txHash);
+	// returns true if the hash has been stored before
+	boolean remove(byte[] txHash);
+	long size();
+	void close();
+}
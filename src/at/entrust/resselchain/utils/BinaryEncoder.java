@@ -0,0 +1,105 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/* Canonical binary encoding of blocks and Tx for hashing and signing (big endian, fixed layout):
+ * int and long values use 4 and 8 bytes, strings are UTF-8 and byte arrays are raw, both prefixed
+ * with their length as int (-1 for null). Every thread reuses one growing buffer, so encoding and
+ * hashing does not allocate besides the resulting hash. */
+public class BinaryEncoder {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final ThreadLocal<BinaryEncoder> encoders = ThreadLocal.withInitial(BinaryEncoder::new);
+
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+	private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+
+	// returns the empty encoder of this thread, do not keep it after the calling method returns
+	public static BinaryEncoder get() {
+		BinaryEncoder encoder = encoders.get();
+		encoder.buffer.clear();
+		return encoder;
+	}
+
+	public BinaryEncoder putInt(int value) {
+		ensureRemaining(Integer.BYTES);
+		buffer.putInt(value);
+		return this;
+	}
+
+	public BinaryEncoder putLong(long value) {
+		ensureRemaining(Long.BYTES);
+		buffer.putLong(value);
+		return this;
+	}
+
+	public BinaryEncoder putBytes(byte[] value) {
+		if (value == null)
+			return putInt(-1);
+		putInt(value.length);
+		return putRaw(value);
+	}
+
+	// bytes without length, e.g. a previously encoded header
+	public BinaryEncoder putRaw(byte[] value) {
+		ensureRemaining(value.length);
+		buffer.put(value);
+		return this;
+	}
+
+	public BinaryEncoder putString(String value) {
+		if (value == null)
+			return putInt(-1);
+
+		ensureRemaining(Integer.BYTES + value.length());
+		int lengthPosition = buffer.position();
+		buffer.putInt(0); // length is written after encoding
+		CharBuffer chars = CharBuffer.wrap(value);
+		utf8.reset();
+		while (true) {
+			CoderResult result = utf8.encode(chars, buffer, true);
+			if (result.isOverflow()) {
+				ensureRemaining(Math.max(16, chars.remaining() * 3));
+				continue;
+			}
+			if (result.isError())
+				throw new IllegalArgumentException("String cannot be encoded as UTF-8.");
+			break;
+		}
+		utf8.flush(buffer);
+		buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+		return this;
+	}
+
+	public byte[] hash() {
+		ByteBuffer encoded = buffer.duplicate();
+		encoded.flip();
+		return Hash.hash(encoded);
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private void ensureRemaining(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+}
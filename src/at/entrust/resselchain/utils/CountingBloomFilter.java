@@ -0,0 +1,102 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/* Counting Bloom filter for keys that already are hash values (e.g. transaction hashes).
+ * Counters allow removal of keys, e.g. when transactions are reverted on a fork.
+ * A negative answer is always correct, a positive answer has to be confirmed by the caller. */
+public class CountingBloomFilter {
+
+	private static final int MIN_CAPACITY = 1024;
+	private static final int MAX_COUNTER = 0xFF;
+
+	private final byte[] counters;
+	private final int numHashFunctions;
+	private final long capacity;
+	private long size = 0;
+
+	public CountingBloomFilter(long expectedElements, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+
+		capacity = Math.max(expectedElements, MIN_CAPACITY);
+		long numCounters = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		counters = new byte[(int) Math.min(numCounters, Integer.MAX_VALUE - 8)];
+		numHashFunctions = Math.max(1, (int) Math.round((double) counters.length / capacity * Math.log(2)));
+	}
+
+	public void add(byte[] key) {
+		long h1 = firstHash(key);
+		long h2 = secondHash(key);
+		for (int i = 0; i < numHashFunctions; i++) {
+			int index = index(h1, h2, i);
+			int counter = counters[index] & MAX_COUNTER;
+			if (counter < MAX_COUNTER)
+				counters[index] = (byte) (counter + 1);
+		}
+		size++;
+	}
+
+	// only remove keys that have been added before, otherwise false negatives are possible
+	public void remove(byte[] key) {
+		long h1 = firstHash(key);
+		long h2 = secondHash(key);
+		for (int i = 0; i < numHashFunctions; i++) {
+			int index = index(h1, h2, i);
+			int counter = counters[index] & MAX_COUNTER;
+			// saturated counters stay saturated since their real value is unknown
+			if (counter > 0 && counter < MAX_COUNTER)
+				counters[index] = (byte) (counter - 1);
+		}
+		if (size > 0)
+			size--;
+	}
+
+	public boolean mightContain(byte[] key) {
+		long h1 = firstHash(key);
+		long h2 = secondHash(key);
+		for (int i = 0; i < numHashFunctions; i++) {
+			if (counters[index(h1, h2, i)] == 0)
+				return false;
+		}
+		return true;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	// true if more elements are stored than the filter has been sized for
+	public boolean isOverCapacity() {
+		return size > capacity;
+	}
+
+	private int index(long h1, long h2, int i) {
+		return (int) Math.floorMod(h1 + i * h2, (long) counters.length);
+	}
+
+	// keys are hash values, so their bytes can be used directly for double hashing
+	private static long firstHash(byte[] key) {
+		if (key.length >= 8)
+			return ByteBuffer.wrap(key, 0, 8).getLong();
+		return Arrays.hashCode(key);
+	}
+
+	private static long secondHash(byte[] key) {
+		if (key.length >= 16)
+			return ByteBuffer.wrap(key, 8, 8).getLong() | 1;
+		return (Arrays.hashCode(key) * 0x9E3779B97F4A7C15L) | 1;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.HashMap;
+
+/* MessageDigest and Signature objects are not thread safe and expensive to look up,
+ * so every thread keeps one instance per algorithm name and reuses it. */
+public class CryptoEngines {
+
+	private static final ThreadLocal<HashMap<String, MessageDigest>> digests = ThreadLocal.withInitial(HashMap::new);
+	private static final ThreadLocal<HashMap<String, Signature>> signatures = ThreadLocal.withInitial(HashMap::new);
+
+	// the returned digest is reset and must not be used after the calling method returns
+	public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+		HashMap<String, MessageDigest> threadDigests = digests.get();
+		MessageDigest md = threadDigests.get(algorithm);
+		if (md == null) {
+			md = MessageDigest.getInstance(algorithm);
+			threadDigests.put(algorithm, md);
+		} else {
+			md.reset();
+		}
+		return md;
+	}
+
+	// the returned signature has to be initialized with initSign or initVerify, which also resets it
+	public static Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+		HashMap<String, Signature> threadSignatures = signatures.get();
+		Signature sig = threadSignatures.get(algorithm);
+		if (sig == null) {
+			sig = Signature.getInstance(algorithm);
+			threadSignatures.put(algorithm, sig);
+		}
+		return sig;
+	}
+}
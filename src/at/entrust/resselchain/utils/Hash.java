@@ -7,6 +7,8 @@
 
 package at.entrust.resselchain.utils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -16,7 +18,7 @@ public class Hash {
 
 	public static byte[] hash(byte[] input) {
 		try {
-			MessageDigest md = MessageDigest.getInstance(GlobalConfig.INSTANCE.HASH_ALOGITHM);
+			MessageDigest md = CryptoEngines.getDigest(GlobalConfig.INSTANCE.HASH_ALOGITHM);
 			md.update(input);
 			return md.digest();
 		} catch (NoSuchAlgorithmException e) {
@@ -26,9 +28,26 @@ public class Hash {
 	}
 	
 	public static byte[] hash(String input) {
+		return hash(input.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// hashes the remaining bytes of the buffer, its position is moved to its limit
+	public static byte[] hash(ByteBuffer input) {
+		try {
+			MessageDigest md = CryptoEngines.getDigest(GlobalConfig.INSTANCE.HASH_ALOGITHM);
+			md.update(input);
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	// hashes a part of the array without copying it
+	public static byte[] hash(byte[] input, int offset, int length) {
 		try {
-			MessageDigest md = MessageDigest.getInstance(GlobalConfig.INSTANCE.HASH_ALOGITHM);
-			md.update(input.getBytes());
+			MessageDigest md = CryptoEngines.getDigest(GlobalConfig.INSTANCE.HASH_ALOGITHM);
+			md.update(input, offset, length);
 			return md.digest();
 		} catch (NoSuchAlgorithmException e) {
 			e.printStackTrace();
@@ -0,0 +1,30 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Map with a maximum size that drops the least recently used entry when full.
+ * Not thread safe, callers have to synchronize. */
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int maxSize;
+
+	public LruCache(int maxSize) {
+		super(16, 0.75f, true); // access order
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > maxSize;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* Binary Merkle tree over hash values (e.g. Tx hashes), built incrementally: appending a leaf only
+ * recomputes the nodes on its path to the root. A node without a sibling is promoted to the next
+ * level unchanged. Leaves and inner nodes are hashed with different prefixes, so an inner node
+ * can never be passed off as a leaf. */
+public class MerkleTree {
+
+	private static final byte LEAF_PREFIX = 0;
+	private static final byte NODE_PREFIX = 1;
+
+	// levels.get(0) holds the leaves, the last level holds the root
+	private final ArrayList<ArrayList<byte[]>> levels = new ArrayList<>();
+
+	/* Siblings on the path from a leaf to the root, bottom up. */
+	public static class Proof {
+		private final int index;
+		private final ArrayList<byte[]> siblings = new ArrayList<>();
+		private final ArrayList<Boolean> siblingOnLeft = new ArrayList<>();
+
+		public Proof(int index) {
+			this.index = index;
+		}
+
+		public void addSibling(byte[] sibling, boolean isLeft) {
+			siblings.add(sibling);
+			siblingOnLeft.add(isLeft);
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public ArrayList<byte[]> getSiblings() {
+			return siblings;
+		}
+
+		public boolean isSiblingOnLeft(int level) {
+			return siblingOnLeft.get(level);
+		}
+	}
+
+	public MerkleTree() {
+		levels.add(new ArrayList<>());
+	}
+
+	public void append(byte[] value) {
+		ArrayList<byte[]> leaves = levels.get(0);
+		leaves.add(hashLeaf(value));
+
+		int index = leaves.size() - 1;
+		int level = 0;
+		while (levels.get(level).size() > 1) {
+			ArrayList<byte[]> nodes = levels.get(level);
+			int parentIndex = index / 2;
+			byte[] left = nodes.get(parentIndex * 2);
+			byte[] parent = (parentIndex * 2 + 1 < nodes.size()) ? hashNode(left, nodes.get(parentIndex * 2 + 1)) : left;
+
+			if (levels.size() == level + 1)
+				levels.add(new ArrayList<>());
+			ArrayList<byte[]> parents = levels.get(level + 1);
+			if (parentIndex < parents.size())
+				parents.set(parentIndex, parent);
+			else
+				parents.add(parent);
+
+			index = parentIndex;
+			level++;
+		}
+	}
+
+	public int size() {
+		return levels.get(0).size();
+	}
+
+	// root of an empty tree is the hash of an empty leaf list
+	public byte[] getRoot() {
+		if (size() == 0)
+			return Hash.hash(new byte[] {NODE_PREFIX});
+		return levels.get(levels.size() - 1).get(0);
+	}
+
+	public Proof getProof(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("No leaf at index " + index);
+
+		Proof proof = new Proof(index);
+		for (int level = 0; level < levels.size() - 1; level++) {
+			ArrayList<byte[]> nodes = levels.get(level);
+			int sibling = (index % 2 == 0) ? index + 1 : index - 1;
+			if (sibling < nodes.size())
+				proof.addSibling(nodes.get(sibling), sibling < index);
+			// no sibling: node has been promoted, nothing to add on this level
+			index /= 2;
+		}
+		return proof;
+	}
+
+	public static boolean verifyProof(byte[] value, Proof proof, byte[] root) {
+		byte[] node = hashLeaf(value);
+		for (int i = 0; i < proof.getSiblings().size(); i++) {
+			byte[] sibling = proof.getSiblings().get(i);
+			node = proof.isSiblingOnLeft(i) ? hashNode(sibling, node) : hashNode(node, sibling);
+		}
+		return Arrays.equals(node, root);
+	}
+
+	private static byte[] hashLeaf(byte[] value) {
+		byte[] input = new byte[value.length + 1];
+		input[0] = LEAF_PREFIX;
+		System.arraycopy(value, 0, input, 1, value.length);
+		return Hash.hash(input);
+	}
+
+	private static byte[] hashNode(byte[] left, byte[] right) {
+		byte[] input = new byte[left.length + right.length + 1];
+		input[0] = NODE_PREFIX;
+		System.arraycopy(left, 0, input, 1, left.length);
+		System.arraycopy(right, 0, input, 1 + left.length, right.length);
+		return Hash.hash(input);
+	}
+}
@@ -9,7 +9,6 @@ package at.entrust.resselchain.utils;
 
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -19,22 +18,23 @@ import java.util.Arrays;
 
 import at.entrust.resselchain.chain.Block;
 import at.entrust.resselchain.chain.Transaction;
-import at.entrust.resselchain.config.GlobalConfig;
 import at.entrust.resselchain.logging.Logger;
 
 /* Adapted from https://stackoverflow.com/questions/7224626/how-to-sign-string-with-private-key */
 public class Sign {
 
 	public static KeyPair getKeyPair() throws NoSuchAlgorithmException {
-		KeyPairGenerator kpg = KeyPairGenerator.getInstance(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
-		kpg.initialize(GlobalConfig.INSTANCE.PKSK_KEY_SIZE);
-		return kpg.genKeyPair();
+		return getKeyPair(SignatureScheme.getDefault());
+	}
+
+	public static KeyPair getKeyPair(SignatureScheme scheme) throws NoSuchAlgorithmException {
+		return scheme.generateKeyPair();
 	}
 
 	public static Block signBlock(Block block, PrivateKey sk) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
 		byte[] hash = block.getBlockHash();
 
-		Signature sig = Signature.getInstance(GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM);
+		Signature sig = CryptoEngines.getSignature(SignatureScheme.forKey(sk).getSignatureAlgorithm());
 		sig.initSign(sk);
 		sig.update(hash);
 		byte[] signature = sig.sign();
@@ -48,7 +48,7 @@ public class Sign {
 	public static Transaction signTransaction(Transaction tx, PrivateKey sk) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
 		byte[] hash = tx.getTransactionHash();
 
-		Signature sig = Signature.getInstance(GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM);
+		Signature sig = CryptoEngines.getSignature(SignatureScheme.forKey(sk).getSignatureAlgorithm());
 		sig.initSign(sk);
 		sig.update(hash);
 		byte[] signature = sig.sign();
@@ -66,7 +66,7 @@ public class Sign {
 		
 		//Logger.FULL.log("Verify Block Signature: Hash: " + Arrays.toString(hash) + " Signature: " + Arrays.toString(signature) + " PK: " + Arrays.toString(pk.getEncoded()) + " PK Base64: " + Base64Converter.encodeFromByteArray(pk.getEncoded()));
 		
-		Signature sig = Signature.getInstance(GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM);
+		Signature sig = CryptoEngines.getSignature(SignatureScheme.forKey(pk).getSignatureAlgorithm());
 		sig.initVerify(pk);
 		sig.update(hash);
 
@@ -79,14 +79,21 @@ public class Sign {
 		byte[] signature = tx.getSignature();
 		byte[] hash = tx.getTransactionHash();
 
+		// Tx received on their own are verified again when they arrive in a block
+		if (signature != null && VerifiedSignatureCache.INSTANCE.contains(hash, signature))
+			return true;
+
 		//Logger.FULL.log("Verify Tx Signature: Hash: " + Arrays.toString(hash) + " Signature: " + Arrays.toString(signature) + " PK: " + Arrays.toString(pk.getEncoded()) + " PK Base64: " + Base64Converter.encodeFromByteArray(pk.getEncoded()));
 		
-		Signature sig = Signature.getInstance(GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM);
+		Signature sig = CryptoEngines.getSignature(SignatureScheme.forKey(pk).getSignatureAlgorithm());
 		sig.initVerify(pk);
 		sig.update(hash);
 
 		//Logger.FULL.log("verify tx signature: " + Arrays.toString(signature));
 		
-		return sig.verify(signature);
+		boolean isValid = sig.verify(signature);
+		if (isValid)
+			VerifiedSignatureCache.INSTANCE.add(hash, signature);
+		return isValid;
 	}
 }
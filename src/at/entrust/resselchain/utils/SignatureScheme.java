@@ -0,0 +1,167 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.AlgorithmParameters;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import at.entrust.resselchain.config.GlobalConfig;
+
+/* Signature schemes a participant may use. Encoded keys (X509 for public keys, PKCS8 for private keys)
+ * contain their algorithm, so every node can verify signatures of any scheme and networks can be
+ * migrated participant by participant. Ed25519 requires Java 15 or later. */
+public enum SignatureScheme {
+	RSA("RSA", "SHA256withRSA"),
+	ECDSA_P256("EC", "SHA256withECDSA"),
+	ED25519("Ed25519", "Ed25519");
+
+	private final String keyAlgorithm;
+	private final String signatureAlgorithm;
+
+	private SignatureScheme(String keyAlgorithm, String signatureAlgorithm) {
+		this.keyAlgorithm = keyAlgorithm;
+		this.signatureAlgorithm = signatureAlgorithm;
+	}
+
+	public String getKeyAlgorithm() {
+		return keyAlgorithm;
+	}
+
+	// the scheme configured by PKSKAlgorithm keeps the configured SignatureAlgorithm
+	public String getSignatureAlgorithm() {
+		if (this == getDefault())
+			return GlobalConfig.INSTANCE.SIGNATURE_ALGORITHM;
+		return signatureAlgorithm;
+	}
+
+	public KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyAlgorithm);
+		try {
+			if (this == RSA)
+				kpg.initialize(GlobalConfig.INSTANCE.PKSK_KEY_SIZE);
+			else if (this == ECDSA_P256)
+				kpg.initialize(new ECGenParameterSpec("secp256r1"));
+		} catch (GeneralSecurityException e) {
+			throw new NoSuchAlgorithmException(e);
+		}
+		return kpg.genKeyPair();
+	}
+
+	public PublicKey decodePublicKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		PublicKey key = KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(encoded));
+		checkCurve(key);
+		return key;
+	}
+
+	public PrivateKey decodePrivateKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		PrivateKey key = KeyFactory.getInstance(keyAlgorithm).generatePrivate(new PKCS8EncodedKeySpec(encoded));
+		checkCurve(key);
+		return key;
+	}
+
+	// the EC key factory accepts keys on any named curve, ECDSA_P256 only accepts secp256r1
+	private void checkCurve(Key key) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		if (this != ECDSA_P256)
+			return;
+		if (!(key instanceof ECKey) || !isP256(((ECKey) key).getParams()))
+			throw new InvalidKeySpecException("EC key is not on curve secp256r1.");
+	}
+
+	private static boolean isP256(ECParameterSpec params) throws NoSuchAlgorithmException {
+		ECParameterSpec p256;
+		try {
+			AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+			parameters.init(new ECGenParameterSpec("secp256r1"));
+			p256 = parameters.getParameterSpec(ECParameterSpec.class);
+		} catch (GeneralSecurityException e) {
+			throw new NoSuchAlgorithmException(e);
+		}
+		return params != null && params.getCurve().equals(p256.getCurve()) && params.getGenerator().equals(p256.getGenerator())
+				&& params.getOrder().equals(p256.getOrder()) && params.getCofactor() == p256.getCofactor();
+	}
+
+	// scheme of PKSKAlgorithm, used when a participant does not specify a scheme
+	public static SignatureScheme getDefault() {
+		SignatureScheme scheme = forKeyAlgorithm(GlobalConfig.INSTANCE.PKSK_ALGORITHM);
+		return (scheme == null) ? RSA : scheme;
+	}
+
+	public static SignatureScheme forKey(Key key) {
+		SignatureScheme scheme = forKeyAlgorithm(key.getAlgorithm());
+		return (scheme == null) ? getDefault() : scheme;
+	}
+
+	public static SignatureScheme forKeyAlgorithm(String keyAlgorithm) {
+		if (keyAlgorithm.equalsIgnoreCase("RSA"))
+			return RSA;
+		if (keyAlgorithm.equalsIgnoreCase("EC") || keyAlgorithm.equalsIgnoreCase("ECDSA"))
+			return ECDSA_P256;
+		if (keyAlgorithm.equalsIgnoreCase("Ed25519") || keyAlgorithm.equalsIgnoreCase("EdDSA"))
+			return ED25519;
+		return null;
+	}
+
+	// accepts the names used in config files, e.g. RSA, ECDSA, ECDSA-P256 or Ed25519
+	public static SignatureScheme fromName(String name) {
+		String normalized = name.trim().replace('-', '_').toUpperCase();
+		if (normalized.equals("ECDSA") || normalized.equals("EC"))
+			return ECDSA_P256;
+		return valueOf(normalized);
+	}
+
+	// tries the default scheme first and then all others
+	public static PublicKey decodeAnyPublicKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		SignatureScheme first = getDefault();
+		try {
+			return first.decodePublicKey(encoded);
+		} catch (GeneralSecurityException e) {
+			for (SignatureScheme scheme : values()) {
+				if (scheme == first)
+					continue;
+				try {
+					return scheme.decodePublicKey(encoded);
+				} catch (GeneralSecurityException e2) {
+					// try next scheme
+				}
+			}
+			throw new InvalidKeySpecException("Public key does not match any signature scheme.", e);
+		}
+	}
+
+	// tries the default scheme first and then all others
+	public static PrivateKey decodeAnyPrivateKey(byte[] encoded) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		SignatureScheme first = getDefault();
+		try {
+			return first.decodePrivateKey(encoded);
+		} catch (GeneralSecurityException e) {
+			for (SignatureScheme scheme : values()) {
+				if (scheme == first)
+					continue;
+				try {
+					return scheme.decodePrivateKey(encoded);
+				} catch (GeneralSecurityException e2) {
+					// try next scheme
+				}
+			}
+			throw new InvalidKeySpecException("Private key does not match any signature scheme.", e);
+		}
+	}
+}
@@ -7,20 +7,29 @@
 
 package at.entrust.resselchain.utils;
 
-import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Calendar;
+import java.time.ZoneId;
+
+import at.entrust.resselchain.config.GlobalConfig;
 
 public class TimeSlots {
+    // days and slots use the configured TimeZone, never the zone of the system, so all nodes agree on them
+    public static ZoneId getZone() {
+        return ZoneId.of(GlobalConfig.INSTANCE.TIME_ZONE);
+    }
+
+    // number of quarter-hour slots of a day (days since epoch) in TimeZone,
+    // i.e. 92 or 100 on days with a daylight saving time change and 96 otherwise
     public static int getSlotsPerDay(long date) {
         LocalDate localDate = LocalDate.ofEpochDay(date);
-        int month = localDate.getMonthValue();
-        DayOfWeek dayOfWeek = localDate.getDayOfWeek();
+        ZoneId zone = getZone();
+        Duration day = Duration.between(localDate.atStartOfDay(zone), localDate.plusDays(1).atStartOfDay(zone));
+        return (int) (day.toMinutes() / 15);
+    }
 
-        if (dayOfWeek == DayOfWeek.SUNDAY && localDate.plusWeeks(1).getMonthValue() != month) {
-            if (month == 2) return 92;
-            else if (month == 9) return 100;
-        }
-        return 96;
+    // start of a day (days since epoch) in TimeZone in ms since epoch
+    public static long getStartOfDay(long date) {
+        return LocalDate.ofEpochDay(date).atStartOfDay(getZone()).toInstant().toEpochMilli();
     }
 }
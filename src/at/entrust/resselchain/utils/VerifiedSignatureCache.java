@@ -0,0 +1,49 @@
+/*
+* This file is part of ResselChain.
+* Copyright Center for Secure Energy Informatics 2018
+* Fabian Knirsch, Andreas Unterweger, Clemens Brunner
+* This code is licensed under a modified 3-Clause BSD License. See LICENSE file for details.
+*/
+
+package at.entrust.resselchain.utils;
+
+import java.nio.ByteBuffer;
+
+import at.entrust.resselchain.config.GlobalConfig;
+
+/* Remembers (Tx hash, signature) pairs that have been verified successfully, so a Tx that has
+ * already been verified when it was received on its own is not verified again inside a block.
+ * The Tx hash contains the sender, whose key never changes, so the pair identifies the check. */
+public enum VerifiedSignatureCache {
+	INSTANCE;
+
+	private final LruCache<ByteBuffer, Boolean> verified = new LruCache<>(GlobalConfig.INSTANCE.SIGNATURE_CACHE_SIZE);
+	private long lookups = 0;
+	private long hits = 0;
+
+	public synchronized boolean contains(byte[] hash, byte[] signature) {
+		lookups++;
+		if (verified.get(key(hash, signature)) == null)
+			return false;
+		hits++;
+		return true;
+	}
+
+	// only add pairs whose signature is valid
+	public synchronized void add(byte[] hash, byte[] signature) {
+		verified.put(key(hash, signature), Boolean.TRUE);
+	}
+
+	// share of lookups that found a verified signature, -1 if there has not been any lookup yet
+	public synchronized double getHitRate() {
+		return (lookups == 0) ? -1 : (double) hits / lookups;
+	}
+
+	private static ByteBuffer key(byte[] hash, byte[] signature) {
+		ByteBuffer key = ByteBuffer.allocate(hash.length + signature.length);
+		key.put(hash);
+		key.put(signature);
+		key.flip();
+		return key;
+	}
+}